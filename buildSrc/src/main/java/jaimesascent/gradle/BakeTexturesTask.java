@@ -0,0 +1,92 @@
+package jaimesascent.gradle;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Converts the JPEG/PNG textures matching {@link #getIncludes()} into
+ * block-compressed DDS files with precomputed mipmaps, written next to each
+ * other under {@link #getOutputDir()} with the same relative path and a
+ * {@code .dds} extension.
+ *
+ * @author capdevon
+ */
+public abstract class BakeTexturesTask extends DefaultTask {
+
+    /**
+     * @return the root directory of the assets
+     */
+    @Internal
+    public abstract DirectoryProperty getSourceDir();
+
+    /**
+     * @return the Ant-style patterns of the textures to bake
+     */
+    @Input
+    public abstract ListProperty<String> getIncludes();
+
+    /**
+     * The DXT encoder is meant for colour data: normal maps must be excluded,
+     * their box-filtered mips are not renormalized and the 565 endpoints
+     * distort the tangent-space vectors.
+     *
+     * @return the Ant-style patterns of the textures to leave as they are
+     */
+    @Input
+    public abstract ListProperty<String> getExcludes();
+
+    /**
+     * @return the directory receiving the DDS files
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileTree getSourceFiles() {
+        return getSourceDir().getAsFileTree().matching(p -> {
+            p.include(getIncludes().get());
+            p.exclude(getExcludes().get());
+        });
+    }
+
+    @TaskAction
+    public void bake() {
+        File outputDir = getOutputDir().get().getAsFile();
+        getSourceFiles().visit(details -> {
+            if (details.isDirectory()) {
+                return;
+            }
+            String path = details.getRelativePath().getPathString();
+            File target = new File(outputDir, path.substring(0, path.lastIndexOf('.')) + ".dds");
+            try {
+                BufferedImage image = ImageIO.read(details.getFile());
+                if (image == null) {
+                    throw new GradleException("Unsupported image format: " + path);
+                }
+                target.getParentFile().mkdirs();
+                DdsEncoder.write(image, target);
+                getLogger().info("Baked {} ({}x{})", path, image.getWidth(), image.getHeight());
+
+            } catch (IOException ex) {
+                throw new GradleException("Failed to bake " + path, ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,291 @@
+package jaimesascent.gradle;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an image as a block-compressed DDS file with a full mip chain:
+ * DXT1 (BC1) for opaque images, DXT5 (BC3) when any pixel is translucent.
+ * <p>
+ * Endpoints are picked from the bounding box of each 4x4 block (inset by
+ * 1/16 of its range), which is fast and close enough to an exhaustive search
+ * for photographic textures. Mip levels are built with a 2x2 box filter.
+ *
+ * @author capdevon
+ */
+public final class DdsEncoder {
+
+    private static final int DDSD_CAPS = 0x1;
+    private static final int DDSD_HEIGHT = 0x2;
+    private static final int DDSD_WIDTH = 0x4;
+    private static final int DDSD_PIXELFORMAT = 0x1000;
+    private static final int DDSD_MIPMAPCOUNT = 0x20000;
+    private static final int DDSD_LINEARSIZE = 0x80000;
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int DDSCAPS_COMPLEX = 0x8;
+    private static final int DDSCAPS_TEXTURE = 0x1000;
+    private static final int DDSCAPS_MIPMAP = 0x400000;
+
+    private DdsEncoder() {
+    }
+
+    /**
+     * Encodes the image and writes it to the given file.
+     *
+     * @param image the source image (not null)
+     * @param file the destination DDS file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(BufferedImage image, File file) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        boolean alpha = hasAlpha(argb);
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int mipCount = 0;
+        int topLevelSize = 0;
+        while (true) {
+            byte[] level = alpha ? encodeDxt5(argb, width, height) : encodeDxt1(argb, width, height);
+            if (mipCount == 0) {
+                topLevelSize = level.length;
+            }
+            data.write(level);
+            mipCount++;
+            if (width == 1 && height == 1) {
+                break;
+            }
+            int w = Math.max(1, width / 2);
+            int h = Math.max(1, height / 2);
+            argb = downsample(argb, width, height, w, h);
+            width = w;
+            height = h;
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            writeHeader(out, image.getWidth(), image.getHeight(), mipCount, topLevelSize, alpha ? "DXT5" : "DXT1");
+            data.writeTo(out);
+        }
+    }
+
+    private static boolean hasAlpha(int[] argb) {
+        for (int pixel : argb) {
+            if ((pixel >>> 24) != 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeHeader(OutputStream os, int width, int height, int mipCount, int linearSize, String fourCC)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeBytes("DDS ");
+        writeInt(out, 124);
+        writeInt(out, DDSD_CAPS | DDSD_HEIGHT | DDSD_WIDTH | DDSD_PIXELFORMAT | DDSD_MIPMAPCOUNT | DDSD_LINEARSIZE);
+        writeInt(out, height);
+        writeInt(out, width);
+        writeInt(out, linearSize);
+        writeInt(out, 0); // depth
+        writeInt(out, mipCount);
+        for (int i = 0; i < 11; i++) {
+            writeInt(out, 0); // reserved
+        }
+        // pixel format
+        writeInt(out, 32);
+        writeInt(out, DDPF_FOURCC);
+        out.writeBytes(fourCC);
+        for (int i = 0; i < 5; i++) {
+            writeInt(out, 0); // bit count and masks
+        }
+        writeInt(out, DDSCAPS_TEXTURE | DDSCAPS_COMPLEX | DDSCAPS_MIPMAP);
+        for (int i = 0; i < 4; i++) {
+            writeInt(out, 0); // caps2, caps3, caps4, reserved
+        }
+        out.flush();
+    }
+
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+
+    private static int[] downsample(int[] src, int width, int height, int w, int h) {
+        int[] dst = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            int y0 = Math.min(y * 2, height - 1);
+            int y1 = Math.min(y * 2 + 1, height - 1);
+            for (int x = 0; x < w; x++) {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+                int p0 = src[y0 * width + x0];
+                int p1 = src[y0 * width + x1];
+                int p2 = src[y1 * width + x0];
+                int p3 = src[y1 * width + x1];
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = ((p0 >>> shift) & 0xFF) + ((p1 >>> shift) & 0xFF)
+                            + ((p2 >>> shift) & 0xFF) + ((p3 >>> shift) & 0xFF);
+                    pixel |= ((sum + 2) / 4) << shift;
+                }
+                dst[y * w + x] = pixel;
+            }
+        }
+        return dst;
+    }
+
+    private static int[] readBlock(int[] argb, int width, int height, int bx, int by, int[] block) {
+        for (int y = 0; y < 4; y++) {
+            int py = Math.min(by + y, height - 1);
+            for (int x = 0; x < 4; x++) {
+                int px = Math.min(bx + x, width - 1);
+                block[y * 4 + x] = argb[py * width + px];
+            }
+        }
+        return block;
+    }
+
+    private static byte[] encodeDxt1(int[] argb, int width, int height) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        byte[] out = new byte[blocksX * blocksY * 8];
+        int[] block = new int[16];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                readBlock(argb, width, height, bx, by, block);
+                offset = encodeColorBlock(block, out, offset);
+            }
+        }
+        return out;
+    }
+
+    private static byte[] encodeDxt5(int[] argb, int width, int height) {
+        int blocksX = (width + 3) / 4;
+        int blocksY = (height + 3) / 4;
+        byte[] out = new byte[blocksX * blocksY * 16];
+        int[] block = new int[16];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                readBlock(argb, width, height, bx, by, block);
+                offset = encodeAlphaBlock(block, out, offset);
+                offset = encodeColorBlock(block, out, offset);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Writes the 8-byte BC1 color block, always in 4-color mode.
+     */
+    private static int encodeColorBlock(int[] block, byte[] out, int offset) {
+        int minR = 255, minG = 255, minB = 255;
+        int maxR = 0, maxG = 0, maxB = 0;
+        for (int pixel : block) {
+            int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+            minR = Math.min(minR, r); minG = Math.min(minG, g); minB = Math.min(minB, b);
+            maxR = Math.max(maxR, r); maxG = Math.max(maxG, g); maxB = Math.max(maxB, b);
+        }
+        // inset the bounding box to reduce the error of the endpoints
+        int insetR = (maxR - minR) >> 4, insetG = (maxG - minG) >> 4, insetB = (maxB - minB) >> 4;
+        int c0 = to565(maxR - insetR, maxG - insetG, maxB - insetB);
+        int c1 = to565(minR + insetR, minG + insetG, minB + insetB);
+        if (c0 < c1) {
+            int tmp = c0;
+            c0 = c1;
+            c1 = tmp;
+        }
+
+        int indices = 0;
+        if (c0 != c1) {
+            int[][] palette = new int[4][];
+            palette[0] = from565(c0);
+            palette[1] = from565(c1);
+            palette[2] = new int[3];
+            palette[3] = new int[3];
+            for (int i = 0; i < 3; i++) {
+                palette[2][i] = (2 * palette[0][i] + palette[1][i]) / 3;
+                palette[3][i] = (palette[0][i] + 2 * palette[1][i]) / 3;
+            }
+            for (int i = 0; i < 16; i++) {
+                int r = (block[i] >> 16) & 0xFF, g = (block[i] >> 8) & 0xFF, b = block[i] & 0xFF;
+                int best = 0;
+                int bestDist = Integer.MAX_VALUE;
+                for (int j = 0; j < 4; j++) {
+                    int dr = r - palette[j][0], dg = g - palette[j][1], db = b - palette[j][2];
+                    int dist = dr * dr + dg * dg + db * db;
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        best = j;
+                    }
+                }
+                indices |= best << (2 * i);
+            }
+        }
+
+        out[offset++] = (byte) c0;
+        out[offset++] = (byte) (c0 >> 8);
+        out[offset++] = (byte) c1;
+        out[offset++] = (byte) (c1 >> 8);
+        for (int i = 0; i < 4; i++) {
+            out[offset++] = (byte) (indices >>> (8 * i));
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the 8-byte BC3 alpha block, in 8-alpha mode.
+     */
+    private static int encodeAlphaBlock(int[] block, byte[] out, int offset) {
+        int min = 255, max = 0;
+        for (int pixel : block) {
+            int a = pixel >>> 24;
+            min = Math.min(min, a);
+            max = Math.max(max, a);
+        }
+
+        long indices = 0;
+        if (max != min) {
+            int[] palette = new int[8];
+            palette[0] = max;
+            palette[1] = min;
+            for (int i = 1; i < 7; i++) {
+                palette[i + 1] = ((7 - i) * max + i * min) / 7;
+            }
+            for (int i = 0; i < 16; i++) {
+                int a = block[i] >>> 24;
+                int best = 0;
+                int bestDist = Integer.MAX_VALUE;
+                for (int j = 0; j < 8; j++) {
+                    int dist = Math.abs(a - palette[j]);
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        best = j;
+                    }
+                }
+                indices |= (long) best << (3 * i);
+            }
+        }
+
+        out[offset++] = (byte) max;
+        out[offset++] = (byte) min;
+        for (int i = 0; i < 6; i++) {
+            out[offset++] = (byte) (indices >>> (8 * i));
+        }
+        return offset;
+    }
+
+    private static int to565(int r, int g, int b) {
+        return ((r * 31 + 127) / 255) << 11 | ((g * 63 + 127) / 255) << 5 | ((b * 31 + 127) / 255);
+    }
+
+    private static int[] from565(int c) {
+        int r = (c >> 11) & 0x1F, g = (c >> 5) & 0x3F, b = c & 0x1F;
+        return new int[] {(r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2)};
+    }
+}
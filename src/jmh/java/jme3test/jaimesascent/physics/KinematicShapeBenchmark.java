@@ -0,0 +1,154 @@
+package jme3test.jaimesascent.physics;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.CapsuleCollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.objects.PhysicsBody;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.system.NativeLibraryLoader;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jme3test.jaimesascent.controls.KinematicPlatformControl;
+import jme3test.jaimesascent.controls.KinematicRotatingControl;
+import jme3test.jaimesascent.controls.PlatformControl;
+import jme3test.jaimesascent.controls.RotatingControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the physics step time of the moving kinematic bodies of the
+ * labyrinth (the three propellers and the five floating platforms) with
+ * {@link KinematicShape#Mesh} and {@link KinematicShape#Convex} shapes, moved
+ * once per frame ({@link PlatformControl}, {@link RotatingControl}) or once per
+ * physics step ({@link KinematicPlatformControl},
+ * {@link KinematicRotatingControl}).
+ * <p>
+ * A ball and a character-sized capsule are dropped on every moving body and
+ * put back every {@value #RESET_STEPS} steps, so the narrowphase always has
+ * contacts to resolve. Run with {@code ./gradlew jmh}.
+ *
+ * @author capdevon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KinematicShapeBenchmark {
+
+    private static final float TIME_STEP = 1 / 60f;
+    private static final int RESET_STEPS = 120;
+
+    @Param({"Mesh", "Convex"})
+    public KinematicShape shape;
+
+    @Param({"Frame", "Tick"})
+    public String driver;
+
+    private final List<Spatial> movingSpatials = new ArrayList<>();
+    private final List<PhysicsRigidBody> probes = new ArrayList<>();
+    private final List<Vector3f> probeStarts = new ArrayList<>();
+
+    private PhysicsSpace space;
+    private Node scene;
+    private int steps;
+
+    @Setup
+    public void setup() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+        CollisionShapeCache.setCacheDir(new File("build/jmh-cache/shapes"));
+
+        AssetManager assetManager = new DesktopAssetManager(true);
+        scene = (Node) assetManager.loadModel("Scenes/labyrinth.j3o");
+        scene.updateGeometricState();
+
+        space = new PhysicsSpace(PhysicsSpace.BroadphaseType.DBVT);
+
+        addPropeller(scene.getChild("Propeller.1"), Vector3f.UNIT_Z);
+        addPropeller(scene.getChild("Propeller.2"), Vector3f.UNIT_Z);
+        addPropeller(scene.getChild("Propeller.3"), Vector3f.UNIT_X);
+        for (int i = 1; i <= 5; i++) {
+            Spatial platform = ((Node) scene.getChild("FloatingPlatform." + i)).getChild(0);
+            addPlatform(platform);
+        }
+
+        for (Spatial sp : movingSpatials) {
+            Vector3f center = sp.getWorldBound().getCenter();
+            addProbe(new PhysicsRigidBody(new SphereCollisionShape(0.9f), 400f), center.add(0, 2f, 0));
+            addProbe(new PhysicsRigidBody(new CapsuleCollisionShape(0.5f, 1.2f), 1f), center.add(0.5f, 3f, 0));
+        }
+    }
+
+    private void addKinematicBody(Spatial sp) {
+        RigidBodyControl rb = new RigidBodyControl(shape.create(sp), PhysicsBody.massForStatic);
+        sp.addControl(rb);
+        rb.setKinematic(true);
+        space.add(rb);
+        movingSpatials.add(sp);
+    }
+
+    private void addPropeller(Spatial sp, Vector3f rotAxis) {
+        addKinematicBody(sp);
+        if (driver.equals("Tick")) {
+            sp.addControl(new KinematicRotatingControl(rotAxis));
+        } else {
+            sp.addControl(new RotatingControl(rotAxis));
+        }
+    }
+
+    private void addPlatform(Spatial sp) {
+        addKinematicBody(sp);
+        if (driver.equals("Tick")) {
+            sp.addControl(new KinematicPlatformControl());
+        } else {
+            sp.addControl(new PlatformControl());
+        }
+    }
+
+    private void addProbe(PhysicsRigidBody body, Vector3f start) {
+        body.setPhysicsLocation(start);
+        space.addCollisionObject(body);
+        probes.add(body);
+        probeStarts.add(start);
+    }
+
+    private void resetProbes() {
+        for (int i = 0; i < probes.size(); i++) {
+            PhysicsRigidBody body = probes.get(i);
+            body.setPhysicsLocation(probeStarts.get(i));
+            body.setLinearVelocity(Vector3f.ZERO);
+            body.setAngularVelocity(Vector3f.ZERO);
+            body.activate(true);
+        }
+    }
+
+    @Benchmark
+    public void step() {
+        if (++steps % RESET_STEPS == 0) {
+            resetProbes();
+        }
+        // moves the kinematic bodies the same way the game does
+        scene.updateLogicalState(TIME_STEP);
+        scene.updateGeometricState();
+        space.update(TIME_STEP, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        space.destroy();
+    }
+
+}
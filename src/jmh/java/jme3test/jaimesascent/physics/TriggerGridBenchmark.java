@@ -0,0 +1,210 @@
+package jme3test.jaimesascent.physics;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-frame cost of finding the triggers that contain a few
+ * moving actors, among thousands of spherical triggers spread over a
+ * 1000x1000 level.
+ * <p>
+ * {@code linear} is the check the old {@code Checkpoint} control ran every
+ * frame, one distance per trigger and actor; {@code grid} queries a
+ * {@link TriggerGrid}. Both move the actors along the same circular paths
+ * and return the number of hits. Before measuring, the setup checks that
+ * both find the same triggers, also after removing, re-adding and moving
+ * some of them, and on a grid that rehashed while filling up. Run with
+ * {@code ./gradlew jmh}.
+ *
+ * @author capdevon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TriggerGridBenchmark {
+
+    private static final float TIME_STEP = 1 / 60f;
+    private static final float WORLD_SIZE = 1000f;
+    private static final float CELL_SIZE = 8f;
+    private static final int CHECK_FRAMES = 120;
+    private static final int CHECK_CENTER_STRIDE = 10;
+
+    @Param({"10000"})
+    public int triggers;
+
+    @Param({"1", "8", "32"})
+    public int actors;
+
+    private Vector3f[] triggerPositions;
+    private float[] triggerRadii;
+    private TriggerGrid grid;
+    // id in the grid of each trigger, and the reverse
+    private int[] ids;
+    private int[] indexOfId;
+
+    private Vector3f[] actorPositions;
+    private Vector3f[] actorCenters;
+    private float[] actorPhases;
+    private final int[] hits = new int[64];
+    private float time;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        triggerPositions = new Vector3f[triggers];
+        triggerRadii = new float[triggers];
+        grid = new TriggerGrid(CELL_SIZE, triggers);
+        ids = new int[triggers];
+        for (int i = 0; i < triggers; i++) {
+            Vector3f pos = randomPosition(random);
+            float radius = 1f + random.nextFloat() * 3f;
+            triggerPositions[i] = pos;
+            triggerRadii[i] = radius;
+            ids[i] = grid.add(pos.x, pos.y, pos.z, radius);
+        }
+
+        actorPositions = new Vector3f[actors];
+        actorCenters = new Vector3f[actors];
+        actorPhases = new float[actors];
+        for (int i = 0; i < actors; i++) {
+            actorPositions[i] = new Vector3f();
+            actorCenters[i] = new Vector3f(random.nextFloat() * WORLD_SIZE, 10f, random.nextFloat() * WORLD_SIZE);
+            actorPhases[i] = random.nextFloat() * FastMath.TWO_PI;
+        }
+
+        checkGrid(grid);
+
+        // remove and re-add some triggers elsewhere, through the free list
+        for (int i = 0; i < triggers; i += 7) {
+            grid.remove(ids[i]);
+        }
+        for (int i = 0; i < triggers; i += 7) {
+            triggerPositions[i] = randomPosition(random);
+            Vector3f pos = triggerPositions[i];
+            ids[i] = grid.add(pos.x, pos.y, pos.z, triggerRadii[i]);
+        }
+        // move some, by a little (same cells) or a lot (relinked)
+        for (int i = 0; i < triggers; i += 5) {
+            Vector3f pos = triggerPositions[i];
+            if (i % 2 == 0) {
+                pos.addLocal(0.01f, 0f, -0.01f);
+            } else {
+                pos.set(randomPosition(random));
+            }
+            grid.move(ids[i], pos.x, pos.y, pos.z);
+        }
+        checkGrid(grid);
+
+        // a grid too small at first, rehashed while filling up
+        TriggerGrid rehashed = new TriggerGrid(CELL_SIZE, 0);
+        for (int i = 0; i < triggers; i++) {
+            Vector3f pos = triggerPositions[i];
+            ids[i] = rehashed.add(pos.x, pos.y, pos.z, triggerRadii[i]);
+        }
+        checkGrid(rehashed);
+        time = 0f;
+    }
+
+    private static Vector3f randomPosition(Random random) {
+        return new Vector3f(random.nextFloat() * WORLD_SIZE, random.nextFloat() * 20f, random.nextFloat() * WORLD_SIZE);
+    }
+
+    /**
+     * Checks that the grid finds the same triggers as the linear search,
+     * along the paths of the actors and at the center of some triggers.
+     */
+    private void checkGrid(TriggerGrid g) {
+        if (g.size() != triggers) {
+            throw new IllegalStateException("Grid has " + g.size() + " triggers, expected " + triggers);
+        }
+        indexOfId = new int[triggers * 2];
+        Arrays.fill(indexOfId, -1);
+        for (int i = 0; i < triggers; i++) {
+            indexOfId[ids[i]] = i;
+        }
+        int[] store = new int[triggers];
+
+        time = 0f;
+        for (int frame = 0; frame < CHECK_FRAMES; frame++) {
+            moveActors();
+            for (int a = 0; a < actors; a++) {
+                checkPoint(g, actorPositions[a], store);
+            }
+        }
+        for (int i = 0; i < triggers; i += CHECK_CENTER_STRIDE) {
+            checkPoint(g, triggerPositions[i], store);
+        }
+    }
+
+    private void checkPoint(TriggerGrid g, Vector3f point, int[] store) {
+        int count = g.query(point, store);
+        int[] found = new int[count];
+        for (int k = 0; k < count; k++) {
+            found[k] = indexOfId[store[k]];
+        }
+        Arrays.sort(found);
+
+        int[] expected = new int[triggers];
+        int n = 0;
+        for (int t = 0; t < triggers; t++) {
+            // same float math as the grid, so points on a boundary agree
+            Vector3f pos = triggerPositions[t];
+            float dx = point.x - pos.x, dy = point.y - pos.y, dz = point.z - pos.z;
+            float r = triggerRadii[t];
+            if (dx * dx + dy * dy + dz * dz < r * r) {
+                expected[n++] = t;
+            }
+        }
+        if (!Arrays.equals(found, Arrays.copyOf(expected, n))) {
+            throw new IllegalStateException("Grid and linear search disagree at " + point
+                    + ": " + Arrays.toString(found) + " vs " + Arrays.toString(Arrays.copyOf(expected, n)));
+        }
+    }
+
+    private void moveActors() {
+        time += TIME_STEP;
+        for (int i = 0; i < actors; i++) {
+            float angle = time * 0.5f + actorPhases[i];
+            Vector3f center = actorCenters[i];
+            actorPositions[i].set(center.x + FastMath.cos(angle) * 50f,
+                    center.y + FastMath.sin(angle * 3f) * 8f,
+                    center.z + FastMath.sin(angle) * 50f);
+        }
+    }
+
+    @Benchmark
+    public int linear() {
+        moveActors();
+        int count = 0;
+        for (int t = 0; t < triggers; t++) {
+            for (int a = 0; a < actors; a++) {
+                if (triggerPositions[t].distance(actorPositions[a]) < triggerRadii[t]) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int grid() {
+        moveActors();
+        int count = 0;
+        for (int a = 0; a < actors; a++) {
+            count += grid.query(actorPositions[a], hits);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,105 @@
+package jme3test.jaimesascent.ui;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.simsilica.lemur.core.GuiControl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the layout pass of {@link ControlLayout}: a full
+ * {@link ControlLayout#reshape(Vector3f, Vector3f) reshape} of a container and
+ * the per-child {@code resize} and {@code calculatePosition} steps, run
+ * over every child like reshape does.
+ * <p>
+ * The benchmarked container is itself a child of a {@link ControlLayout}, added
+ * with or without lock-scaling, so both branches of every alignment are
+ * covered. Run with {@code ./gradlew jmh}; the GC profiler reports the bytes
+ * allocated per operation.
+ *
+ * @author capdevon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControlLayoutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int children;
+
+    @Param({"Center", "CenterTop", "CenterBottom",
+        "RightCenter", "RightTop", "RightBottom",
+        "LeftCenter", "LeftTop", "LeftBottom"})
+    public ControlLayout.Alignment alignment;
+
+    @Param({"false", "true"})
+    public boolean lockScaling;
+
+    private final Vector3f pos = new Vector3f();
+    private Vector3f size;
+    private ControlLayout layout;
+    private ControlLayout.Control[] controls;
+
+    @Setup
+    public void setup() {
+        final Vector3f window = new Vector3f(1280, 720, 1);
+        final Vector3f resolution = new Vector3f(1024, 576, 1);
+        ControlLayout.RootPane rootPane = ControlLayout.onCreateRootPane(window, resolution);
+
+        // parent container, decides whether the benchmarked one is lock-scaling
+        GuiControl parentControl = createGuiControl(window.clone());
+        parentControl.setLayout(new ControlLayout(rootPane));
+
+        GuiControl containerControl = createGuiControl(new Vector3f(500, 700, 0));
+        layout = new ControlLayout(rootPane);
+        containerControl.setLayout(layout);
+        ((ControlLayout) parentControl.getLayout()).addChild(containerControl.getNode(), ControlLayout.Alignment.Center, lockScaling);
+
+        controls = new ControlLayout.Control[children];
+        for (int i = 0; i < children; i++) {
+            GuiControl child = createGuiControl(new Vector3f(300, 45, 0));
+            layout.addChild(child.getNode(), alignment, false);
+            layout.setAttribute(ControlLayout.POSITION, child.getNode(), new Vector3f(25, i % 50, 1));
+            controls[i] = layout.getChildControl(child.getNode());
+        }
+
+        parentControl.setSize(window.clone());
+        size = containerControl.getSize().clone();
+    }
+
+    private static GuiControl createGuiControl(Vector3f preferredSize) {
+        Node node = new Node("Panel");
+        GuiControl gc = new GuiControl();
+        node.addControl(gc);
+        gc.setPreferredSize(preferredSize);
+        return gc;
+    }
+
+    @Benchmark
+    public void reshape() {
+        layout.reshape(pos, size);
+    }
+
+    @Benchmark
+    public void resize() {
+        for (ControlLayout.Control control : controls) {
+            control.resize();
+        }
+    }
+
+    @Benchmark
+    public void calculatePosition(Blackhole bh) {
+        for (ControlLayout.Control control : controls) {
+            bh.consume(control.calculatePosition());
+        }
+    }
+
+}
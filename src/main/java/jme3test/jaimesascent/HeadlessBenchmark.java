@@ -0,0 +1,308 @@
+package jme3test.jaimesascent;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.jme3.app.FlyCamAppState;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import com.jme3.system.Timer;
+import com.sun.management.ThreadMXBean;
+
+import jme3test.jaimesascent.assets.BakedTextureLoader;
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.physics.KinematicShape;
+import jme3test.jaimesascent.replay.InputRecording;
+import jme3test.jaimesascent.replay.InputReplayState;
+import jme3test.jaimesascent.screen.GameScreen;
+import jme3test.jaimesascent.states.GameState;
+import jme3test.jaimesascent.states.SceneState;
+import jme3test.jaimesascent.ui.LemurGuiStyle;
+
+/**
+ * Runs the labyrinth level without a window or GPU, advancing the simulation
+ * with a fixed time per frame, and prints the physics step time, the update
+ * time and the allocation rate of the render thread.
+ * <p>
+ * Usage: {@code HeadlessBenchmark [--frames N] [--warmup N] [--tpf seconds] [--csv file] [--replay file] [--shapes mesh|convex] [--parallel-physics] [--stress-balls N]}
+ * <p>
+ * With {@code --parallel-physics} the physics is stepped on its own thread
+ * while the frame is rendered, so the physics step time overlaps the frame
+ * time instead of adding to it.
+ * <p>
+ * With {@code --stress-balls} N extra rolling balls are thrown in the level,
+ * to measure how the physics and the particles scale.
+ * <p>
+ * With {@code --replay} the player follows an {@link InputRecording} made with
+ * {@code Main --record}, and the run lasts as long as the recording.
+ *
+ * @author capdevon
+ */
+public class HeadlessBenchmark extends GameApplication implements PhysicsTickListener {
+
+    private static final String USAGE = "Usage: HeadlessBenchmark [--frames N] [--warmup N] [--tpf seconds]"
+            + " [--csv file] [--replay file] [--shapes mesh|convex] [--parallel-physics] [--stress-balls N]";
+
+    /**
+     * A timer that reports the same time per frame on every frame, so that
+     * each run simulates exactly the same sequence of steps.
+     */
+    private static class FixedStepTimer extends Timer {
+
+        private final float tpf;
+        private long frames;
+
+        public FixedStepTimer(float tpf) {
+            this.tpf = tpf;
+        }
+
+        @Override
+        public long getTime() {
+            return (long) (frames * (double) tpf * getResolution());
+        }
+
+        @Override
+        public long getResolution() {
+            return 1_000_000_000L;
+        }
+
+        @Override
+        public float getFrameRate() {
+            return 1f / tpf;
+        }
+
+        @Override
+        public float getTimePerFrame() {
+            return tpf;
+        }
+
+        @Override
+        public void update() {
+            frames++;
+        }
+
+        @Override
+        public void reset() {
+            frames = 0;
+        }
+    }
+
+    /**
+     *
+     * @param args
+     */
+    public static void main(String[] args) throws IOException {
+        int frames = 3600;
+        int warmup = 600;
+        float tpf = 1 / 60f;
+        String csvFile = null;
+        InputRecording recording = null;
+        KinematicShape kinematicShape = KinematicShape.Mesh;
+        boolean parallelPhysics = false;
+        int stressBalls = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--frames" -> frames = Integer.parseInt(Main.value(args, ++i, USAGE));
+                case "--warmup" -> warmup = Integer.parseInt(Main.value(args, ++i, USAGE));
+                case "--tpf" -> tpf = Float.parseFloat(Main.value(args, ++i, USAGE));
+                case "--csv" -> csvFile = Main.value(args, ++i, USAGE);
+                case "--replay" -> recording = InputRecording.read(new File(Main.value(args, ++i, USAGE)));
+                case "--shapes" -> kinematicShape = KinematicShape.fromString(Main.value(args, ++i, USAGE));
+                case "--parallel-physics" -> parallelPhysics = true;
+                case "--stress-balls" -> stressBalls = Integer.parseInt(Main.value(args, ++i, USAGE));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i] + "\n" + USAGE);
+            }
+        }
+
+        if (recording != null) {
+            frames = recording.getFrameCount() - warmup;
+            if (frames <= 0) {
+                throw new IllegalArgumentException("Recording is shorter than the warm-up");
+            }
+        }
+
+        HeadlessBenchmark app = new HeadlessBenchmark(frames, warmup, csvFile, recording, kinematicShape);
+        app.parallelPhysics = parallelPhysics;
+        app.stressBalls = stressBalls;
+        AppSettings settings = new AppSettings(true);
+        settings.setAudioRenderer(null);
+        settings.setFrameRate(-1);
+        app.setShowSettings(false);
+        app.setSettings(settings);
+        app.setTimer(new FixedStepTimer(tpf));
+
+        app.start(JmeContext.Type.Headless);
+    }
+
+    private final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupFrames;
+    private final String csvFile;
+    private final InputRecording recording;
+    private final KinematicShape kinematicShape;
+
+    private final long[] frameNanos;
+    private final long[] physicsNanos;
+    private final long[] allocatedBytes;
+
+    private boolean parallelPhysics;
+    private int stressBalls;
+    private BulletAppState bulletAppState;
+    private SceneState sceneState;
+    private boolean tickListenerAdded;
+    private int frameCount;
+    // written on the physics thread, read after the step has been joined
+    private volatile long physicsStart;
+    private volatile long physicsElapsed;
+
+    public HeadlessBenchmark(int frames, int warmupFrames, String csvFile, InputRecording recording,
+            KinematicShape kinematicShape) {
+        this.warmupFrames = warmupFrames;
+        this.csvFile = csvFile;
+        this.recording = recording;
+        this.kinematicShape = kinematicShape;
+        this.frameNanos = new long[frames];
+        this.physicsNanos = new long[frames];
+        this.allocatedBytes = new long[frames];
+    }
+
+    @Override
+    public void simpleInitApp() {
+        stateManager.detach(stateManager.getState(FlyCamAppState.class));
+        assetManager.registerLoader(BakedTextureLoader.class, "jpg", "png");
+        BudgetedAssetCache.initialize(assetManager, 256L << 20);
+
+        LemurGuiStyle.initialize(this);
+
+        bulletAppState = new BulletAppState();
+        if (parallelPhysics) {
+            bulletAppState.setThreadingType(BulletAppState.ThreadingType.PARALLEL);
+        }
+        stateManager.attach(bulletAppState);
+        stateManager.attach(new GameScreen());
+
+        sceneState = new SceneState();
+        sceneState.setKinematicShape(kinematicShape);
+        sceneState.setStressBalls(stressBalls);
+        sceneState.setLoadedScript(() -> {
+            stateManager.attach(new GameState());
+            if (recording != null) {
+                stateManager.attach(new InputReplayState(recording));
+            }
+        });
+        stateManager.attach(sceneState);
+    }
+
+    @Override
+    public void simpleUpdate(float tpf) {
+        if (!tickListenerAdded) {
+            bulletAppState.getPhysicsSpace().addTickListener(this);
+            tickListenerAdded = true;
+        }
+    }
+
+    @Override
+    public void update() {
+        long alloc = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        physicsElapsed = 0;
+
+        super.update();
+
+        long elapsed = System.nanoTime() - start;
+        alloc = threadBean.getCurrentThreadAllocatedBytes() - alloc;
+
+        if (!sceneState.isLoaded()) {
+            // the level is still loading in the background
+            return;
+        }
+        int sample = frameCount - warmupFrames;
+        frameCount++;
+        if (sample < 0) {
+            return;
+        }
+        if (sample < frameNanos.length) {
+            frameNanos[sample] = elapsed;
+            physicsNanos[sample] = physicsElapsed;
+            allocatedBytes[sample] = alloc;
+        }
+        if (sample == frameNanos.length - 1) {
+            printReport();
+            stop();
+        }
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        physicsStart = System.nanoTime();
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        physicsElapsed += System.nanoTime() - physicsStart;
+    }
+
+    private void printReport() {
+        int frames = frameNanos.length;
+        long[] updateNanos = new long[frames];
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < frames; i++) {
+            // a parallel step does not add to the frame time
+            updateNanos[i] = parallelPhysics ? frameNanos[i] : frameNanos[i] - physicsNanos[i];
+            totalNanos += frameNanos[i];
+            totalBytes += allocatedBytes[i];
+        }
+
+        System.out.printf(Locale.ROOT, "Headless benchmark: %d frames (after %d warm-up), tpf=%.5f s, %s shapes, %s physics, %d stress balls%n",
+                frames, warmupFrames, timer.getTimePerFrame(), kinematicShape,
+                bulletAppState.getThreadingType(), stressBalls);
+        System.out.printf(Locale.ROOT, "%-14s %10s %10s %10s %10s%n", "[us]", "mean", "p50", "p99", "max");
+        printRow("frame", frameNanos);
+        printRow("physics step", physicsNanos);
+        printRow("update", updateNanos);
+        System.out.printf(Locale.ROOT, "allocated: %.1f KB/frame, %.1f MB/s%n",
+                totalBytes / (double) frames / 1024.0,
+                totalBytes / (totalNanos / 1e9) / (1024.0 * 1024.0));
+
+        if (csvFile != null) {
+            writeCsv(updateNanos);
+        }
+    }
+
+    private void printRow(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        System.out.printf(Locale.ROOT, "%-14s %10.1f %10.1f %10.1f %10.1f%n", name,
+                mean / 1000.0,
+                percentile(sorted, 0.50) / 1000.0,
+                percentile(sorted, 0.99) / 1000.0,
+                sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private void writeCsv(long[] updateNanos) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(csvFile))) {
+            out.println("frame,frame_ns,physics_ns,update_ns,allocated_bytes");
+            for (int i = 0; i < frameNanos.length; i++) {
+                out.println(i + "," + frameNanos[i] + "," + physicsNanos[i] + "," + updateNanos[i] + "," + allocatedBytes[i]);
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to write " + csvFile + ": " + ex);
+        }
+    }
+}
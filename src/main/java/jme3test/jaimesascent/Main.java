@@ -31,6 +31,7 @@
  */
 package jme3test.jaimesascent;
 
+import jme3test.jaimesascent.states.LevelManager;
 import jme3test.jaimesascent.states.SceneState;
 import jme3test.jaimesascent.states.GameState;
 import com.jme3.app.FlyCamAppState;
@@ -42,9 +43,17 @@ import com.jme3.system.JmeVersion;
 import com.jme3.texture.Image;
 import com.jme3.texture.Texture;
 import com.jme3.util.BufferUtils;
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import jme3test.jaimesascent.assets.BakedTextureLoader;
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.physics.KinematicShape;
+import jme3test.jaimesascent.profiling.FrameProfilerState;
+import jme3test.jaimesascent.profiling.StartupProfiler;
+import jme3test.jaimesascent.replay.InputRecorderState;
 import jme3test.jaimesascent.screen.GameScreen;
+import jme3test.jaimesascent.screen.LoadingScreen;
 import jme3test.jaimesascent.ui.LemurGuiStyle;
 
 /**
@@ -55,16 +64,54 @@ import jme3test.jaimesascent.ui.LemurGuiStyle;
  */
 public class Main extends GameApplication {
 
+    private static final String USAGE = "Usage: Main [--record file] [--shapes mesh|convex]"
+            + " [--asset-budget MB] [--parallel-physics] [--fps N] [--physics-hz N]"
+            + " [--max-substeps N] [--stress-balls N]";
+
+    private boolean startupReported;
+    private File recordFile;
+    private KinematicShape kinematicShape = KinematicShape.Mesh;
+    private long assetBudgetMB = 256;
+    private boolean parallelPhysics;
+    private int frameRate = 60;
+    private float physicsRate = 60f;
+    private int maxSubSteps = 4;
+    private int stressBalls;
+
     /**
      *
-     * @param args
+     * @param args {@code --record <file>} saves the player input of the
+     * session, see {@link HeadlessBenchmark} for replaying it;
+     * {@code --shapes mesh|convex} selects the collision shape of the moving
+     * platforms; {@code --asset-budget <MB>} sets the memory budget of the
+     * {@link BudgetedAssetCache} (default 256); {@code --parallel-physics}
+     * steps the physics on its own thread, while the frame is rendered;
+     * {@code --fps <N>} caps the frame rate (default 60) and
+     * {@code --physics-hz <N>} / {@code --max-substeps <N>} set the fixed
+     * physics step (default 60 Hz, at most 4 steps per frame), the character
+     * is interpolated between steps; {@code --stress-balls <N>} throws N
+     * extra rolling balls in the level
      */
     public static void main(String[] args) {
         Main app = new Main();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--record" -> app.recordFile = new File(value(args, ++i, USAGE));
+                case "--shapes" -> app.kinematicShape = KinematicShape.fromString(value(args, ++i, USAGE));
+                case "--asset-budget" -> app.assetBudgetMB = Long.parseLong(value(args, ++i, USAGE));
+                case "--parallel-physics" -> app.parallelPhysics = true;
+                case "--fps" -> app.frameRate = Integer.parseInt(value(args, ++i, USAGE));
+                case "--physics-hz" -> app.physicsRate = Float.parseFloat(value(args, ++i, USAGE));
+                case "--max-substeps" -> app.maxSubSteps = Integer.parseInt(value(args, ++i, USAGE));
+                case "--stress-balls" -> app.stressBalls = Integer.parseInt(value(args, ++i, USAGE));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i] + "\n" + USAGE);
+            }
+        }
+
         AppSettings settings = new AppSettings(true);
         settings.setTitle("Jaime Jump: " + JmeVersion.FULL_NAME);
         settings.setResolution(1280, 720);
-        settings.setFrameRate(60);
+        settings.setFrameRate(app.frameRate);
 //        settings.setUseJoysticks(true);
 //        settings.setRenderer(AppSettings.LWJGL_OPENGL32);
 //        settings.setAudioRenderer(AppSettings.LWJGL_OPENAL);
@@ -74,26 +121,82 @@ public class Main extends GameApplication {
         app.start();
     }
 
+    /**
+     * Returns the value of the option before index i, shared with the
+     * {@link HeadlessBenchmark}.
+     */
+    static String value(String[] args, int i, String usage) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1] + "\n" + usage);
+        }
+        return args[i];
+    }
+
     @Override
     public void simpleInitApp() {
+        StartupProfiler.Phase initPhase = StartupProfiler.begin("simpleInitApp");
+
         // disable the default 1st-person flyCam!
         stateManager.detach(stateManager.getState(FlyCamAppState.class));
         flyCam.setEnabled(false);
+
+        // prefer the DDS textures baked by the assets project
+        assetManager.registerLoader(BakedTextureLoader.class, "jpg", "png");
+        BudgetedAssetCache.initialize(assetManager, assetBudgetMB << 20);
         
+        StartupProfiler.Phase phase = StartupProfiler.begin("createJmeCursor");
         JmeCursor cursor = createJmeCursor("Interface/UI/cursor_g.png");
         inputManager.setMouseCursor(cursor);
+        phase.end();
 
+        phase = StartupProfiler.begin("LemurGuiStyle.initialize");
         LemurGuiStyle.initialize(this);
+        phase.end();
+
+        // measure every state from here on
+        FrameProfilerState profiler = new FrameProfilerState();
+        stateManager.attach(profiler);
+
+        phase = StartupProfiler.begin("BulletAppState attach");
+        BulletAppState bulletAppState = new BulletAppState();
+        if (parallelPhysics) {
+            bulletAppState.setThreadingType(BulletAppState.ThreadingType.PARALLEL);
+        }
+        profiler.attach(bulletAppState);
+        // Bullet accumulates the frame time and runs whole steps of this size
+        bulletAppState.getPhysicsSpace().setAccuracy(1f / physicsRate);
+        bulletAppState.getPhysicsSpace().setMaxSubSteps(maxSubSteps);
+        phase.end();
+
+        profiler.attach(new PhysxDebugState());
+        profiler.attach(new GameScreen());
+        profiler.attach(new LoadingScreen());
 
-        stateManager.attach(new BulletAppState());
-        stateManager.attach(new PhysxDebugState());
-        stateManager.attach(new GameScreen());
-        stateManager.attach(new SceneState());
-        stateManager.attach(new GameState());
+        // the player is added once the first level has been loaded in the background
+        LevelManager levelManager = new LevelManager(SceneState.DEFAULT_LEVEL);
+        levelManager.setKinematicShape(kinematicShape);
+        levelManager.setStressBalls(stressBalls);
+        levelManager.setLevelLoadedScript(() -> {
+            if (stateManager.getState(GameState.class) == null) {
+                profiler.attach(new GameState());
+                if (recordFile != null) {
+                    profiler.attach(new InputRecorderState(recordFile));
+                }
+            }
+        });
+        profiler.attach(levelManager);
+
+        initPhase.end();
     }
 
     @Override
     public void simpleUpdate(float tpf) {
+        GameState gameState = stateManager.getState(GameState.class);
+        if (!startupReported && gameState != null && gameState.isInitialized()) {
+            // the level is loaded and the player is in the scene
+            startupReported = true;
+            StartupProfiler.printReport();
+        }
     }
 
     @Override
@@ -0,0 +1,43 @@
+package jme3test.jaimesascent.assets;
+
+import java.io.IOException;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetLoader;
+import com.jme3.asset.TextureKey;
+import com.jme3.texture.plugins.AWTLoader;
+import com.jme3.texture.plugins.DDSLoader;
+
+/**
+ * Texture loader for JPEG/PNG files that loads the baked {@code .dds} file
+ * with the same name instead, when the {@code bakeTextures} task of the assets
+ * project has produced one. Baked textures are already block-compressed and
+ * carry their mipmaps, so nothing has to be inflated or generated at runtime.
+ *
+ * <pre><code>
+ * assetManager.registerLoader(BakedTextureLoader.class, "jpg", "png");
+ * </code></pre>
+ *
+ * @author capdevon
+ */
+public class BakedTextureLoader implements AssetLoader {
+
+    private final DDSLoader ddsLoader = new DDSLoader();
+    private final AWTLoader awtLoader = new AWTLoader();
+
+    @Override
+    public Object load(AssetInfo info) throws IOException {
+        if (info.getKey() instanceof TextureKey) {
+            TextureKey key = (TextureKey) info.getKey();
+            String name = key.getName();
+            TextureKey bakedKey = new TextureKey(name.substring(0, name.lastIndexOf('.')) + ".dds", key.isFlipY());
+            bakedKey.setTextureTypeHint(key.getTextureTypeHint());
+
+            AssetInfo bakedInfo = info.getManager().locateAsset(bakedKey);
+            if (bakedInfo != null) {
+                return ddsLoader.load(bakedInfo);
+            }
+        }
+        return awtLoader.load(info);
+    }
+}
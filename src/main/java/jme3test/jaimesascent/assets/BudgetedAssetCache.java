@@ -0,0 +1,424 @@
+package jme3test.jaimesascent.assets;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.MaterialKey;
+import com.jme3.asset.ModelKey;
+import com.jme3.asset.TextureKey;
+import com.jme3.font.BitmapFont;
+import com.jme3.material.MatParam;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+
+/**
+ * A reference-counted cache in front of the {@link AssetManager} for
+ * textures, models, materials and fonts, with a memory budget.
+ * <p>
+ * Every asset loaded through this cache counts as used until it is released
+ * with the matching {@code release} method. When the estimated size of the
+ * cached assets (image data, vertex buffers) exceeds the budget, the least
+ * recently used assets that are no longer referenced are dropped. Assets are
+ * removed from the AssetManager's own cache once loaded, so that dropping
+ * them here actually frees the memory.
+ * <p>
+ * The textures loaded by the AssetManager on behalf of a model, material or
+ * font (e.g. the maps of a j3m) are tracked as entries of their own, used by
+ * the assets that reference them: each image is counted once, whoever loaded
+ * it, and stays cached as long as one of them is. Loading the same texture
+ * directly shares the entry. Images embedded without a key are counted with
+ * their owner.
+ *
+ * <pre><code>
+ * BudgetedAssetCache.initialize(assetManager, 256L &lt;&lt; 20);
+ * Spatial model = BudgetedAssetCache.getInstance().loadModel("Models/Jaime/Jaime.j3o");
+ * ...
+ * BudgetedAssetCache.getInstance().releaseModel("Models/Jaime/Jaime.j3o");
+ * </code></pre>
+ *
+ * @author capdevon
+ */
+public class BudgetedAssetCache {
+
+    private static final Logger logger = Logger.getLogger(BudgetedAssetCache.class.getName());
+
+    private static BudgetedAssetCache instance;
+
+    /**
+     * Initializes the shared instance.
+     *
+     * @param assetManager the asset manager (not null)
+     * @param budgetBytes the memory budget in bytes
+     */
+    public static void initialize(AssetManager assetManager, long budgetBytes) {
+        instance = new BudgetedAssetCache(assetManager, budgetBytes);
+    }
+
+    /**
+     * @return the shared instance
+     * @throws IllegalStateException if not initialized
+     */
+    public static BudgetedAssetCache getInstance() {
+        if (instance == null) {
+            throw new IllegalStateException("BudgetedAssetCache is not initialized");
+        }
+        return instance;
+    }
+
+    private static class Entry {
+
+        private final Object asset;
+        private final long bytes;
+        // the nested textures used by this asset
+        private final List<TextureKey> dependencies;
+        // loaded inside another asset
+        private boolean nested;
+        private int refs;
+
+        Entry(Object asset, long bytes, List<TextureKey> dependencies) {
+            this.asset = asset;
+            this.bytes = bytes;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final AssetManager assetManager;
+    // access order: the first entry is the least recently used
+    private final LinkedHashMap<AssetKey<?>, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long budgetBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int nestedCount;
+
+    public BudgetedAssetCache(AssetManager assetManager, long budgetBytes) {
+        this.assetManager = assetManager;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Loads a texture the same way as {@link AssetManager#loadTexture(String)}
+     * (flipped, with mipmaps).
+     *
+     * @param name the asset path
+     * @return a clone of the cached texture
+     */
+    public Texture loadTexture(String name) {
+        return loadTexture(textureKey(name));
+    }
+
+    public Texture loadTexture(TextureKey key) {
+        Texture texture = (Texture) acquire(key);
+        return texture.clone();
+    }
+
+    /**
+     * @param name the asset path
+     * @return a clone of the cached model (sharing its meshes)
+     */
+    public Spatial loadModel(String name) {
+        Spatial model = (Spatial) acquire(new ModelKey(name));
+        return model.clone();
+    }
+
+    /**
+     * @param name the asset path
+     * @return a clone of the cached material
+     */
+    public Material loadMaterial(String name) {
+        Material material = (Material) acquire(new MaterialKey(name));
+        return material.clone();
+    }
+
+    /**
+     * @param name the asset path
+     * @return the cached font (shared)
+     */
+    public BitmapFont loadFont(String name) {
+        return (BitmapFont) acquire(new AssetKey<BitmapFont>(name));
+    }
+
+    public void releaseTexture(String name) {
+        release(textureKey(name));
+    }
+
+    public void releaseModel(String name) {
+        release(new ModelKey(name));
+    }
+
+    public void releaseMaterial(String name) {
+        release(new MaterialKey(name));
+    }
+
+    public void releaseFont(String name) {
+        release(new AssetKey<BitmapFont>(name));
+    }
+
+    /**
+     * Marks one use of the asset as finished. Unreferenced assets stay cached
+     * until the budget is exceeded.
+     *
+     * @param key the key used to load the asset
+     */
+    public synchronized void release(AssetKey<?> key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.refs == 0) {
+            logger.log(Level.WARNING, "Released an asset that is not in use: {0}", key);
+            return;
+        }
+        entry.refs--;
+        evict();
+    }
+
+    private Object acquire(AssetKey<?> key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                entry.refs++;
+                hits++;
+                return entry.asset;
+            }
+        }
+
+        // load outside of the lock, so other threads can use the cache meanwhile
+        Object asset = assetManager.loadAsset(key);
+        assetManager.deleteFromCache(key);
+        Map<TextureKey, Texture> nested = nestedTextures(asset, key);
+        long bytes = sizeOf(asset, nested.values());
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                // loaded by another thread in the meantime
+                hits++;
+            } else {
+                entry = new Entry(asset, bytes, new ArrayList<>(nested.keySet()));
+                entries.put(key, entry);
+                usedBytes += bytes;
+                misses++;
+                for (Map.Entry<TextureKey, Texture> e : nested.entrySet()) {
+                    acquireNested(e.getKey(), e.getValue());
+                }
+            }
+            entry.refs++;
+            evict();
+            return entry.asset;
+        }
+    }
+
+    /**
+     * Registers one more use of a texture loaded inside another asset.
+     */
+    private void acquireNested(TextureKey key, Texture texture) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            long bytes = sizeOf(texture.getImage(), Collections.newSetFromMap(new IdentityHashMap<>()));
+            entry = new Entry(texture, bytes, Collections.emptyList());
+            entry.nested = true;
+            entries.put(key, entry);
+            usedBytes += bytes;
+            nestedCount++;
+        }
+        entry.refs++;
+    }
+
+    private void evict() {
+        List<Entry> dropped = new ArrayList<>();
+        while (usedBytes > budgetBytes) {
+            Iterator<Map.Entry<AssetKey<?>, Entry>> it = entries.entrySet().iterator();
+            while (usedBytes > budgetBytes && it.hasNext()) {
+                Map.Entry<AssetKey<?>, Entry> e = it.next();
+                if (e.getValue().refs == 0) {
+                    it.remove();
+                    usedBytes -= e.getValue().bytes;
+                    evictions++;
+                    dropped.add(e.getValue());
+                    if (e.getValue().nested) {
+                        nestedCount--;
+                    }
+                    logger.log(Level.FINE, "Evicted {0}", e.getKey());
+                }
+            }
+            if (dropped.isEmpty()) {
+                return;
+            }
+            // the textures of the dropped assets may be evictable now
+            for (Entry entry : dropped) {
+                for (TextureKey dep : entry.dependencies) {
+                    Entry nested = entries.get(dep);
+                    if (nested != null && nested.refs > 0) {
+                        nested.refs--;
+                    }
+                }
+            }
+            dropped.clear();
+        }
+    }
+
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    public synchronized long getBudget() {
+        return budgetBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "%d assets (%d nested textures), %.1f/%.1f MB, hits=%d, misses=%d, evictions=%d",
+                entries.size(), nestedCount, usedBytes / (1024.0 * 1024.0), budgetBytes / (1024.0 * 1024.0),
+                hits, misses, evictions);
+    }
+
+    private static TextureKey textureKey(String name) {
+        TextureKey key = new TextureKey(name, true);
+        key.setGenerateMips(true);
+        return key;
+    }
+
+    /**
+     * Collects the textures referenced by an asset that have a key of their
+     * own, i.e. were loaded by the AssetManager as separate assets.
+     */
+    private static Map<TextureKey, Texture> nestedTextures(Object asset, AssetKey<?> ownKey) {
+        Map<TextureKey, Texture> nested = new LinkedHashMap<>();
+        forEachTexture(asset, texture -> {
+            if (texture.getKey() instanceof TextureKey && !texture.getKey().equals(ownKey)) {
+                nested.putIfAbsent((TextureKey) texture.getKey(), texture);
+            }
+        });
+        return nested;
+    }
+
+    /**
+     * Estimates the memory used by an asset itself: vertex buffers and the
+     * images that are not tracked as nested textures, each counted once.
+     */
+    private static long sizeOf(Object asset, Collection<Texture> nested) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Texture texture : nested) {
+            // counted by their own entries
+            seen.add(texture.getImage());
+        }
+        long[] bytes = {0};
+        forEachTexture(asset, texture -> bytes[0] += sizeOf(texture.getImage(), seen));
+        if (asset instanceof Spatial) {
+            ((Spatial) asset).depthFirstTraversal(sp -> {
+                if (sp instanceof Geometry) {
+                    bytes[0] += sizeOf(((Geometry) sp).getMesh(), seen);
+                }
+            });
+        }
+        return bytes[0];
+    }
+
+    private static void forEachTexture(Object asset, Consumer<Texture> action) {
+        if (asset instanceof Texture) {
+            action.accept((Texture) asset);
+
+        } else if (asset instanceof Material) {
+            forEachTexture((Material) asset, action);
+
+        } else if (asset instanceof BitmapFont) {
+            BitmapFont font = (BitmapFont) asset;
+            for (int i = 0; i < font.getPageSize(); i++) {
+                forEachTexture(font.getPage(i), action);
+            }
+
+        } else if (asset instanceof Spatial) {
+            ((Spatial) asset).depthFirstTraversal(sp -> {
+                if (sp instanceof Geometry && ((Geometry) sp).getMaterial() != null) {
+                    forEachTexture(((Geometry) sp).getMaterial(), action);
+                }
+            });
+        }
+    }
+
+    private static void forEachTexture(Material material, Consumer<Texture> action) {
+        for (MatParam param : material.getParams()) {
+            if (param instanceof MatParamTexture) {
+                Texture texture = ((MatParamTexture) param).getTextureValue();
+                if (texture != null) {
+                    action.accept(texture);
+                }
+            }
+        }
+    }
+
+    private static long sizeOf(Image image, Set<Object> seen) {
+        if (image == null || !seen.add(image)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (ByteBuffer data : image.getData()) {
+            if (data != null) {
+                bytes += data.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    private static long sizeOf(Mesh mesh, Set<Object> seen) {
+        if (mesh == null || !seen.add(mesh)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (VertexBuffer vb : mesh.getBufferList()) {
+            Buffer data = vb.getData();
+            if (data instanceof FloatBuffer || data instanceof IntBuffer) {
+                bytes += 4L * data.capacity();
+            } else if (data instanceof ShortBuffer) {
+                bytes += 2L * data.capacity();
+            } else if (data instanceof DoubleBuffer) {
+                bytes += 8L * data.capacity();
+            } else if (data != null) {
+                bytes += data.capacity();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package jme3test.jaimesascent.assets;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jme3.material.Material;
+import com.jme3.texture.Texture;
+
+import jme3test.jaimesascent.profiling.StartupProfiler;
+
+/**
+ * Loads several textures at once through the {@link BudgetedAssetCache},
+ * decoding the images on a pool of worker threads. jME uploads a texture to
+ * the GPU the first time it is rendered, so only the upload happens on the
+ * render thread.
+ *
+ * <pre><code>
+ * Texture[] faces = textureLoader.loadTextures(dir + "west.jpg", dir + "east.jpg", ...);
+ * textureLoader.loadTextures(material, Map.of("DiffuseMap", "...", "NormalMap", "..."));
+ * </code></pre>
+ *
+ * @author capdevon
+ */
+public class ParallelTextureLoader {
+
+    private final BudgetedAssetCache cache;
+    private final ExecutorService pool;
+
+    /**
+     * Creates a loader with one worker per available core (at most 6, the
+     * faces of a cube map).
+     *
+     * @param cache the asset cache (not null)
+     */
+    public ParallelTextureLoader(BudgetedAssetCache cache) {
+        this(cache, Math.max(1, Math.min(6, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Creates a loader with the given number of workers.
+     *
+     * @param cache the asset cache (not null)
+     * @param threads the number of workers (&ge;1)
+     */
+    public ParallelTextureLoader(BudgetedAssetCache cache, int threads) {
+        this.cache = cache;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "TextureLoader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the given textures in parallel and waits for all of them.
+     *
+     * @param names the asset paths of the textures
+     * @return the textures, in the same order as the names
+     */
+    public Texture[] loadTextures(String... names) {
+        List<Future<Texture>> futures = new ArrayList<>(names.length);
+        for (String name : names) {
+            futures.add(pool.submit(() -> {
+                StartupProfiler.Phase phase = StartupProfiler.begin("decode " + name);
+                try {
+                    return cache.loadTexture(name);
+                } finally {
+                    phase.end();
+                }
+            }));
+        }
+        Texture[] textures = new Texture[names.length];
+        StartupProfiler.Phase wait = StartupProfiler.beginWait("join " + names.length + " textures");
+        try {
+            for (int i = 0; i < names.length; i++) {
+                textures[i] = await(futures.get(i), names[i]);
+            }
+        } finally {
+            wait.end();
+        }
+        return textures;
+    }
+
+    /**
+     * Loads the textures of a material in parallel and sets them as its
+     * parameters.
+     *
+     * @param material the material to modify (not null)
+     * @param params the asset path of the texture for each material parameter
+     * (e.g. "DiffuseMap" to "Models/Jaime/diffuseMap.jpg")
+     */
+    public void loadTextures(Material material, Map<String, String> params) {
+        Map<String, String> ordered = new LinkedHashMap<>(params);
+        Texture[] textures = loadTextures(ordered.values().toArray(new String[0]));
+        int i = 0;
+        for (String param : ordered.keySet()) {
+            material.setTexture(param, textures[i++]);
+        }
+    }
+
+    /**
+     * Stops the workers. The loader cannot be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static Texture await(Future<Texture> future, String name) {
+        try {
+            return future.get();
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                // e.g. AssetNotFoundException, keep the original type
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Failed to load " + name, ex.getCause());
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading " + name, ex);
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package jme3test.jaimesascent.controls;
 
+import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.control.AbstractControl;
+import jme3test.jaimesascent.physics.TriggerListener;
+import jme3test.jaimesascent.physics.TriggerVolume;
+import jme3test.jaimesascent.profiling.CheckpointEvent;
 
 /**
+ * Runs its action script when the target enters the trigger volume of the
+ * checkpoint (a {@link TriggerVolume} of {@code activationRadius}, see
+ * {@link jme3test.jaimesascent.states.TriggerState}).
  *
  * @author capdevon
  */
-public class Checkpoint extends AbstractControl {
+public class Checkpoint extends AbstractControl implements TriggerListener {
 
     private float activationRadius = 1f;
     private Spatial target;
@@ -17,17 +24,28 @@ public class Checkpoint extends AbstractControl {
 
     @Override
     protected void controlUpdate(float tpf) {
-        if (target != null) {
-            if (spatial.getWorldTranslation().distance(target.getWorldTranslation()) < activationRadius) {
-                actionScript.execute();
-            }
-        }
+        // Nothing to update: driven by the trigger events
     }
 
     @Override
     protected void controlRender(RenderManager rm, ViewPort vp) {
     }
 
+    @Override
+    public void onTriggerEnter(TriggerVolume trigger, PhysicsCollisionObject other) {
+        if (!isEnabled() || spatial == null) {
+            return;
+        }
+        if (target == null || other.getUserObject() == target) {
+            CheckpointEvent event = new CheckpointEvent();
+            event.name = spatial.getName();
+            event.target = (target != null) ? target.getName() : String.valueOf(other.getUserObject());
+            event.begin();
+            actionScript.execute();
+            event.commit();
+        }
+    }
+
     public void destroy() {
         spatial.removeFromParent();
     }
@@ -0,0 +1,95 @@
+package jme3test.jaimesascent.controls;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+
+/**
+ * Moves platforms up and down, like {@link PlatformControl}, once per
+ * physics step.
+ *
+ * @author capdevon
+ */
+public class KinematicPlatformControl extends KinematicTickControl {
+
+    private final Vector3f base = new Vector3f();
+    private final Vector3f axis = new Vector3f();
+    private final Vector3f location = new Vector3f();
+    private boolean directionUp = false;
+    private float maxDistance = 2f;
+    private float velocity = 1f;
+    private float offset;
+
+    @Override
+    public void setSpatial(Spatial spatial) {
+        super.setSpatial(spatial);
+        if (spatial != null) {
+            // the platform moves along the Y axis of its parent
+            offset = spatial.getLocalTranslation().y;
+            if (spatial.getParent() != null) {
+                spatial.getParent().getWorldRotation().mult(Vector3f.UNIT_Y, axis);
+                axis.multLocal(spatial.getParent().getWorldScale().y);
+            } else {
+                axis.set(Vector3f.UNIT_Y);
+            }
+            base.set(spatial.getWorldTranslation()).subtractLocal(axis.mult(offset));
+        }
+    }
+
+    @Override
+    public void step(float timeStep) {
+        if (directionUp && offset < maxDistance) {
+            offset += velocity * timeStep;
+
+        } else if (!directionUp && offset > -maxDistance) {
+            offset -= velocity * timeStep;
+
+        } else {
+            directionUp = !directionUp;
+        }
+        axis.mult(offset, location).addLocal(base);
+        rb.setPhysicsLocation(location);
+    }
+
+    /**
+     * Advances the platform along its up and down cycle in one go.
+     */
+    @Override
+    public void advance(float time) {
+        // position in the cycle: going up from -max to max, then down
+        float cycle = 4f * maxDistance;
+        if (cycle <= 0f || velocity <= 0f) {
+            return;
+        }
+        float clamped = FastMath.clamp(offset, -maxDistance, maxDistance);
+        float s = directionUp ? clamped + maxDistance : 3f * maxDistance - clamped;
+        s = (s + velocity * time) % cycle;
+
+        if (s < 2f * maxDistance) {
+            directionUp = true;
+            offset = s - maxDistance;
+        } else {
+            directionUp = false;
+            offset = 3f * maxDistance - s;
+        }
+        axis.mult(offset, location).addLocal(base);
+        rb.setPhysicsLocation(location);
+    }
+
+    public float getMaxDistance() {
+        return maxDistance;
+    }
+
+    public void setMaxDistance(float maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    public float getVelocity() {
+        return velocity;
+    }
+
+    public void setVelocity(float velocity) {
+        this.velocity = velocity;
+    }
+
+}
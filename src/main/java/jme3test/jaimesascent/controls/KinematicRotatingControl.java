@@ -0,0 +1,65 @@
+package jme3test.jaimesascent.controls;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Rotates a kinematic body around one of its local axes, like
+ * {@link RotatingControl}, once per physics step.
+ *
+ * @author capdevon
+ */
+public class KinematicRotatingControl extends KinematicTickControl {
+
+    private final Vector3f rotationAxis = new Vector3f(0, 1, 0);
+    private final Quaternion rotation = new Quaternion();
+    private final Quaternion delta = new Quaternion();
+    private float rotationSpeed = 1.0f;
+
+    /**
+     * Constructs a new KinematicRotatingControl.
+     */
+    public KinematicRotatingControl() {
+    }
+
+    public KinematicRotatingControl(Vector3f rotationAxis) {
+        this.rotationAxis.set(rotationAxis);
+    }
+
+    @Override
+    public void step(float timeStep) {
+        float rotationAmount = rotationSpeed * timeStep;
+        delta.fromAngles(rotationAxis.x * rotationAmount, rotationAxis.y * rotationAmount, rotationAxis.z * rotationAmount);
+        rb.getPhysicsRotation(rotation).multLocal(delta);
+        rb.setPhysicsRotation(rotation);
+    }
+
+    /**
+     * Applies the whole rotation for the given time in one go.
+     */
+    @Override
+    public void advance(float time) {
+        float rotationAmount = (rotationSpeed * time) % FastMath.TWO_PI;
+        delta.fromAngles(rotationAxis.x * rotationAmount, rotationAxis.y * rotationAmount, rotationAxis.z * rotationAmount);
+        rb.getPhysicsRotation(rotation).multLocal(delta);
+        rb.setPhysicsRotation(rotation);
+    }
+
+    public Vector3f getRotationAxis() {
+        return rotationAxis;
+    }
+
+    public void setRotationAxis(Vector3f rotationAxis) {
+        this.rotationAxis.set(rotationAxis);
+    }
+
+    public float getRotationSpeed() {
+        return rotationSpeed;
+    }
+
+    public void setRotationSpeed(float rotationSpeed) {
+        this.rotationSpeed = rotationSpeed;
+    }
+
+}
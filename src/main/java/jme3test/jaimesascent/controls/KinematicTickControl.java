@@ -0,0 +1,213 @@
+package jme3test.jaimesascent.controls;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import java.util.Objects;
+
+/**
+ * Base class of the controls that move a kinematic body once per physics
+ * step, instead of moving the spatial once per frame.
+ * <p>
+ * The body is not driven by the spatial
+ * ({@link RigidBodyControl#setKinematicSpatial(boolean) kinematicSpatial} is
+ * false): the subclass sets its transform in {@link #step(float)}. Bullet
+ * derives the velocity of the body from consecutive steps, so whatever rides
+ * on it (e.g. the character) is carried at a consistent speed, and the cost
+ * depends on the physics rate, not on the frame rate.
+ * <p>
+ * Bullet only interpolates the motion state of dynamic bodies, so the
+ * spatial is rendered between the transforms of the last two steps, like
+ * the {@code InterpolatedCharacterControl}. This control must be added after
+ * the RigidBodyControl, so it overrides the transform that one copies to the
+ * spatial.
+ *
+ * @author capdevon
+ */
+public abstract class KinematicTickControl extends AbstractControl implements PhysicsTickListener {
+
+    private static final float ADVANCE_STEP = 1 / 60f;
+    private static final int MAX_ADVANCE_STEPS = 600;
+
+    protected RigidBodyControl rb;
+    private PhysicsSpace tickSpace;
+
+    private final Vector3f previousLocation = new Vector3f();
+    private final Vector3f currentLocation = new Vector3f();
+    private final Quaternion previousRotation = new Quaternion();
+    private final Quaternion currentRotation = new Quaternion();
+    private final Vector3f renderLocation = new Vector3f();
+    private final Quaternion renderRotation = new Quaternion();
+    private final Quaternion parentRotation = new Quaternion();
+    private float stepSize = 1 / 60f;
+    private float timeSinceStep;
+    private boolean hasSteps;
+
+    @Override
+    public void setSpatial(Spatial spatial) {
+        super.setSpatial(spatial);
+        if (spatial != null) {
+            rb = spatial.getControl(RigidBodyControl.class);
+            Objects.requireNonNull(rb, "RigidBodyControl not found: " + spatial);
+            rb.setKinematic(true);
+            rb.setKinematicSpatial(false);
+        }
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        // follow the body to the space it has been added to
+        PhysicsSpace space = rb.getPhysicsSpace();
+        if (space != tickSpace) {
+            if (tickSpace != null) {
+                tickSpace.removeTickListener(this);
+            }
+            if (space != null) {
+                space.addTickListener(this);
+            }
+            tickSpace = space;
+        }
+        if (hasSteps) {
+            interpolate(tpf);
+        }
+    }
+
+    /**
+     * Renders the spatial between the last two steps. The steps of this frame
+     * run after the update: render one step behind.
+     */
+    private void interpolate(float tpf) {
+        timeSinceStep += tpf;
+        float alpha = FastMath.clamp(timeSinceStep / stepSize, 0f, 1f);
+        FastMath.interpolateLinear(alpha, previousLocation, currentLocation, renderLocation);
+        renderRotation.slerp(previousRotation, currentRotation, alpha);
+        applyRenderPose();
+    }
+
+    /**
+     * Moves the spatial to renderLocation and renderRotation, in world space.
+     */
+    private void applyRenderPose() {
+        Node parent = spatial.getParent();
+        if (parent != null) {
+            parent.worldToLocal(renderLocation, renderLocation);
+            parentRotation.set(parent.getWorldRotation()).inverseLocal();
+            parentRotation.mult(renderRotation, renderRotation);
+        }
+        spatial.setLocalTranslation(renderLocation);
+        spatial.setLocalRotation(renderRotation);
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        if (rb.getPhysicsSpace() != space) {
+            // removed from the space while detached from the scene
+            space.removeTickListener(this);
+            tickSpace = null;
+            return;
+        }
+        if (isEnabled()) {
+            step(timeStep);
+            recordStep(timeStep);
+        }
+    }
+
+    private void recordStep(float timeStep) {
+        previousLocation.set(currentLocation);
+        previousRotation.set(currentRotation);
+        rb.getPhysicsLocation(currentLocation);
+        rb.getPhysicsRotation(currentRotation);
+        if (!hasSteps) {
+            previousLocation.set(currentLocation);
+            previousRotation.set(currentRotation);
+            hasSteps = true;
+        }
+        stepSize = timeStep;
+        timeSinceStep = 0f;
+    }
+
+    /**
+     * Moves the spatial where the body is now, without interpolating from the
+     * last step. Call it after moving the body outside of the physics steps:
+     * re-enabling the RigidBodyControl copies the spatial's transform back
+     * to the body, so both must agree.
+     */
+    public void resetInterpolation() {
+        rb.getPhysicsLocation(currentLocation);
+        rb.getPhysicsRotation(currentRotation);
+        previousLocation.set(currentLocation);
+        previousRotation.set(currentRotation);
+        timeSinceStep = stepSize;
+        hasSteps = true;
+        renderLocation.set(currentLocation);
+        renderRotation.set(currentRotation);
+        applyRenderPose();
+    }
+
+    /**
+     * Tells whether the body is where the last step (or the last
+     * {@link #resetInterpolation()}) left it.
+     *
+     * @param tolerance the maximum distance, and the maximum difference of
+     * each quaternion component
+     * @return true if the body is at the recorded pose
+     */
+    public boolean isAtRecordedPose(float tolerance) {
+        rb.getPhysicsLocation(renderLocation);
+        rb.getPhysicsRotation(renderRotation);
+        if (renderLocation.distance(currentLocation) > tolerance) {
+            return false;
+        }
+        // q and -q are the same rotation
+        float sign = renderRotation.dot(currentRotation) < 0f ? -1f : 1f;
+        return FastMath.abs(renderRotation.getX() * sign - currentRotation.getX()) <= tolerance
+                && FastMath.abs(renderRotation.getY() * sign - currentRotation.getY()) <= tolerance
+                && FastMath.abs(renderRotation.getZ() * sign - currentRotation.getZ()) <= tolerance
+                && FastMath.abs(renderRotation.getW() * sign - currentRotation.getW()) <= tolerance;
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+    }
+
+    /**
+     * Moves the body by one step. Runs on the physics thread.
+     *
+     * @param timeStep the duration of the step (in seconds)
+     */
+    public abstract void step(float timeStep);
+
+    /**
+     * Moves the body to where it would be after the given time, e.g. to catch
+     * up after a suspension. Runs on the render thread, while the body is out
+     * of the PhysicsSpace.
+     * <p>
+     * This implementation replays the time in fixed steps, at most
+     * {@value #MAX_ADVANCE_STEPS} of them: subclasses whose motion is
+     * periodic should override it with a closed form.
+     *
+     * @param time the elapsed time (in seconds, &ge;0)
+     */
+    public void advance(float time) {
+        int steps = Math.min((int) (time / ADVANCE_STEP), MAX_ADVANCE_STEPS);
+        for (int i = 0; i < steps; i++) {
+            step(ADVANCE_STEP);
+        }
+        if (steps < MAX_ADVANCE_STEPS) {
+            step(time - steps * ADVANCE_STEP);
+        }
+    }
+
+}
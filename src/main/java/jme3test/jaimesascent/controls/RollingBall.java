@@ -1,5 +1,7 @@
 package jme3test.jaimesascent.controls;
 
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
@@ -9,12 +11,18 @@ import com.jme3.scene.control.AbstractControl;
 import java.util.Objects;
 
 /**
+ * Throws the ball again from its start position when it falls off the level.
+ * <p>
+ * The position is checked, and the ball reset, between physics steps, so
+ * that it is safe when the physics runs on its own thread.
  *
  * @author capdevon
  */
-public class RollingBall extends AbstractControl {
+public class RollingBall extends AbstractControl implements PhysicsTickListener {
 
     private RigidBodyControl rb;
+    private PhysicsSpace tickSpace;
+    private final Vector3f physicsLocation = new Vector3f();
     private final Vector3f startPosition = new Vector3f();
     private final Vector3f impulse = new Vector3f(0, 0, -1f);
     private float height = -10f;
@@ -30,16 +38,45 @@ public class RollingBall extends AbstractControl {
 
     @Override
     protected void controlUpdate(float tpf) {
-        if (spatial.getWorldTranslation().y < height) {
+        // follow the body to the space it has been added to
+        PhysicsSpace space = rb.getPhysicsSpace();
+        if (space != tickSpace) {
+            if (tickSpace != null) {
+                tickSpace.removeTickListener(this);
+            }
+            if (space != null) {
+                space.addTickListener(this);
+            }
+            tickSpace = space;
+        }
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        if (rb.getPhysicsSpace() != space) {
+            // removed from the space while detached from the scene
+            space.removeTickListener(this);
+            tickSpace = null;
+            return;
+        }
+        if (rb.getPhysicsLocation(physicsLocation).y < height) {
             resetBall();
         }
     }
 
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+    }
+
     @Override
     protected void controlRender(RenderManager rm, ViewPort vp) {
     }
 
-    private void resetBall() {
+    /**
+     * Puts the ball back at its start position and throws it again. Call it
+     * on the render thread, or between physics steps.
+     */
+    public void resetBall() {
         rb.clearForces();
         rb.setLinearVelocity(Vector3f.ZERO);
         rb.setAngularVelocity(Vector3f.ZERO);
@@ -0,0 +1,171 @@
+package jme3test.jaimesascent.controls;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.effect.ParticleEmitter;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Sphere;
+
+/**
+ * A pool of pre-built rolling balls, each one with its own particle emitter,
+ * RigidBodyControl and {@link RollingBall} control.
+ * <p>
+ * All the balls share the same Sphere mesh, material and collision shape.
+ * Spawning takes a ball from the pool and throws it with
+ * {@link RollingBall#resetBall()}, and releasing gives it back, so nothing
+ * is allocated once the pool is built. When the pool is empty, the oldest
+ * active ball is thrown again. Spawn and release on the render thread.
+ *
+ * @author capdevon
+ */
+public class RollingBallPool {
+
+    /**
+     * A pooled ball and its parts.
+     */
+    private static class Ball {
+
+        private final Node node;
+        private final ParticleEmitter emitter;
+        private final RigidBodyControl rigidbody;
+        private final RollingBall control;
+
+        Ball(Node node, ParticleEmitter emitter, RigidBodyControl rigidbody, RollingBall control) {
+            this.node = node;
+            this.emitter = emitter;
+            this.rigidbody = rigidbody;
+            this.control = control;
+        }
+    }
+
+    private final Node node;
+    private final Deque<Ball> free = new ArrayDeque<>();
+    private final Deque<Ball> active = new ArrayDeque<>();
+
+    /**
+     * Builds the balls. Can run on a loader thread, before the node is
+     * attached to the scene.
+     *
+     * @param name the name of the node holding the active balls
+     * @param radius the radius of the balls
+     * @param mass the mass of the balls
+     * @param material the material shared by the balls (not null)
+     * @param emitterFactory creates the emitter of each ball (not null)
+     * @param capacity the number of balls
+     */
+    public RollingBallPool(String name, float radius, float mass, Material material,
+            Supplier<ParticleEmitter> emitterFactory, int capacity) {
+        node = new Node(name);
+        Sphere mesh = new Sphere(16, 16, radius);
+        SphereCollisionShape shape = new SphereCollisionShape(radius);
+
+        for (int i = 0; i < capacity; i++) {
+            Geometry geo = new Geometry("Sphere", mesh);
+            geo.setMaterial(material);
+
+            Node ball = new Node("RollingBall." + i);
+            ParticleEmitter emitter = emitterFactory.get();
+            ball.attachChild(emitter);
+            ball.attachChild(geo);
+
+            RigidBodyControl rigidbody = new RigidBodyControl(shape, mass);
+            ball.addControl(rigidbody);
+            rigidbody.setRestitution(1);
+
+            RollingBall control = new RollingBall();
+            ball.addControl(control);
+            free.add(new Ball(ball, emitter, rigidbody, control));
+        }
+    }
+
+    /**
+     * Throws a ball from the given position.
+     *
+     * @param space the PhysicsSpace of the level (not null)
+     * @param startPosition where the ball starts, and restarts when it falls
+     * (not null, unaffected)
+     * @param impulse the impulse applied at each start (not null, unaffected)
+     * @param height the height below which the ball is thrown again
+     * @return the ball
+     */
+    public Node spawn(PhysicsSpace space, Vector3f startPosition, Vector3f impulse, float height) {
+        Ball ball = free.poll();
+        if (ball == null) {
+            // recycle the oldest one
+            ball = active.poll();
+        }
+
+        RollingBall control = ball.control;
+        control.setStartPosition(startPosition);
+        control.setImpulse(impulse);
+        control.setHeight(height);
+
+        ball.emitter.killAllParticles();
+
+        node.attachChild(ball.node);
+        if (ball.rigidbody.getPhysicsSpace() == null) {
+            space.add(ball.rigidbody);
+        }
+        control.resetBall();
+        active.add(ball);
+        return ball.node;
+    }
+
+    /**
+     * Gives a ball back to the pool.
+     *
+     * @param ball a ball returned by spawn
+     */
+    public void release(Node ball) {
+        for (Iterator<Ball> it = active.iterator(); it.hasNext();) {
+            Ball b = it.next();
+            if (b.node == ball) {
+                it.remove();
+                deactivate(b);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives every active ball back to the pool.
+     */
+    public void releaseAll() {
+        while (!active.isEmpty()) {
+            deactivate(active.poll());
+        }
+    }
+
+    private void deactivate(Ball ball) {
+        PhysicsSpace space = ball.rigidbody.getPhysicsSpace();
+        if (space != null) {
+            space.remove(ball.rigidbody);
+        }
+        ball.node.removeFromParent();
+        free.add(ball);
+    }
+
+    /**
+     * @return the node holding the active balls
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getFreeCount() {
+        return free.size();
+    }
+}
@@ -0,0 +1,197 @@
+package jme3test.jaimesascent.physics;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.CompoundCollisionShape;
+import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.export.Savable;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+
+import vhacd.VHACDParameters;
+
+/**
+ * Stores the collision shapes generated from the level meshes on disk, so
+ * that the expensive ones (e.g. the BVH of a {@code MeshCollisionShape}) are
+ * built only once. Shapes are keyed by a SHA-256 hash of the vertex
+ * positions, the indices and the local transforms of the source geometries,
+ * so any change to the model invalidates its entry.
+ * <p>
+ * Entries are j3o files in {@code cache/shapes}. A missing, unreadable or
+ * stale entry is simply rebuilt and written again.
+ *
+ * @author capdevon
+ */
+public final class CollisionShapeCache {
+
+    private static final Logger logger = Logger.getLogger(CollisionShapeCache.class.getName());
+
+    /**
+     * increment when the layout of the hashed data or of the stored shapes
+     * changes
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static File cacheDir = new File("cache/shapes");
+
+    private CollisionShapeCache() {
+    }
+
+    /**
+     * Sets the directory of the cache entries (default: cache/shapes).
+     *
+     * @param dir the directory (not null)
+     */
+    public static void setCacheDir(File dir) {
+        cacheDir = dir;
+    }
+
+    /**
+     * Cached version of {@link CollisionShapeFactory#createMeshShape(Spatial)}.
+     *
+     * @param spatial the model (not null)
+     * @return a new or deserialized shape
+     */
+    public static CollisionShape createMeshShape(Spatial spatial) {
+        String key = hash("mesh", spatial);
+        return load(key, () -> CollisionShapeFactory.createMeshShape(spatial));
+    }
+
+    /**
+     * Cached version of
+     * {@link CollisionShapeFactory#createVhacdShape(Spatial, VHACDParameters, CompoundCollisionShape)}:
+     * approximates the model with a compound of convex hulls.
+     *
+     * @param spatial the model (not null)
+     * @param parameters the V-HACD parameters (not null)
+     * @return a new or deserialized shape
+     */
+    public static CollisionShape createVhacdShape(Spatial spatial, VHACDParameters parameters) {
+        String kind = "vhacd resolution=" + parameters.getVoxelResolution()
+                + " maxVertices=" + parameters.getMaxVerticesPerHull();
+        String key = hash(kind, spatial);
+        return load(key, () -> CollisionShapeFactory.createVhacdShape(spatial, parameters, null));
+    }
+
+    /**
+     * Returns the shape stored under the given key, or creates and stores it.
+     *
+     * @param key the hash identifying the shape
+     * @param factory creates the shape on a cache miss
+     * @return the shape
+     */
+    static CollisionShape load(String key, Supplier<CollisionShape> factory) {
+        File file = new File(cacheDir, key + ".j3o");
+        if (file.isFile()) {
+            try {
+                Savable savable = BinaryImporter.getInstance().load(file);
+                return (CollisionShape) savable;
+
+            } catch (IOException | RuntimeException ex) {
+                logger.log(Level.WARNING, "Failed to read cached shape " + file + ", rebuilding it", ex);
+            }
+        }
+
+        CollisionShape shape = factory.get();
+        save(shape, file);
+        return shape;
+    }
+
+    private static void save(CollisionShape shape, File file) {
+        try {
+            Files.createDirectories(cacheDir.toPath());
+            // write to a temporary file first, so a crash never leaves a truncated entry
+            File tmp = File.createTempFile(file.getName(), ".tmp", cacheDir);
+            BinaryExporter.getInstance().save(shape, tmp);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to write cached shape " + file, ex);
+        }
+    }
+
+    /**
+     * Computes the key of a shape generated from the given model.
+     *
+     * @param kind the kind of shape (and any parameter used to build it)
+     * @param spatial the model (not null)
+     * @return a hex SHA-256 hash
+     */
+    static String hash(String kind, Spatial spatial) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(kind);
+                List<Geometry> geometries = new ArrayList<>();
+                spatial.depthFirstTraversal(sp -> {
+                    if (sp instanceof Geometry) {
+                        geometries.add((Geometry) sp);
+                    }
+                });
+                for (Geometry geom : geometries) {
+                    writeGeometry(out, geom, spatial);
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+
+        } catch (NoSuchAlgorithmException | IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void writeGeometry(DataOutputStream out, Geometry geom, Spatial root) throws IOException {
+        // transforms up to (but excluding) the root, as used by the shape factory
+        for (Spatial sp = geom; sp != root && sp != null; sp = sp.getParent()) {
+            Vector3f t = sp.getLocalTranslation();
+            Quaternion q = sp.getLocalRotation();
+            Vector3f s = sp.getLocalScale();
+            out.writeFloat(t.x); out.writeFloat(t.y); out.writeFloat(t.z);
+            out.writeFloat(q.getX()); out.writeFloat(q.getY()); out.writeFloat(q.getZ()); out.writeFloat(q.getW());
+            out.writeFloat(s.x); out.writeFloat(s.y); out.writeFloat(s.z);
+        }
+
+        Mesh mesh = geom.getMesh();
+        out.writeUTF(mesh.getMode().name());
+
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        int numFloats = positions == null ? 0 : positions.limit();
+        out.writeInt(numFloats);
+        for (int i = 0; i < numFloats; i++) {
+            out.writeFloat(positions.get(i));
+        }
+
+        IndexBuffer indices = mesh.getIndexBuffer();
+        int numIndices = indices == null ? 0 : indices.size();
+        out.writeInt(numIndices);
+        for (int i = 0; i < numIndices; i++) {
+            out.writeInt(indices.get(i));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package jme3test.jaimesascent.physics;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.control.BetterCharacterControl;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.jme3.util.clone.Cloner;
+
+/**
+ * A BetterCharacterControl that renders the character between the positions
+ * of the last two physics steps, instead of snapping it to the last one.
+ * <p>
+ * When the frame rate is higher than the physics rate (e.g. 144 Hz with
+ * steps of 1/60 s) several frames are rendered per step: without
+ * interpolation the character would move only on some of them. Bullet
+ * interpolates the motion state of dynamic rigid bodies only: the kinematic
+ * platforms are interpolated by their {@code KinematicTickControl}, and the
+ * character's body, whose motion is set by this control, here.
+ *
+ * @author capdevon
+ */
+public class InterpolatedCharacterControl extends BetterCharacterControl {
+
+    private Vector3f previousLocation = new Vector3f();
+    private Vector3f currentLocation = new Vector3f();
+    private Vector3f renderLocation = new Vector3f();
+    private float stepSize = 1 / 60f;
+    private float timeSinceStep;
+    private boolean hasSteps;
+    private boolean interpolation = true;
+
+    /**
+     * No-argument constructor needed by SavableClassUtil.
+     */
+    protected InterpolatedCharacterControl() {
+    }
+
+    /**
+     * @param radius the radius of the character's collision shape
+     * @param height the height of the character's collision shape
+     * @param mass the mass of the character
+     */
+    public InterpolatedCharacterControl(float radius, float height, float mass) {
+        super(radius, height, mass);
+    }
+
+    public boolean isInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * @param interpolation true to interpolate between steps (default: true)
+     */
+    public void setInterpolation(boolean interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        super.physicsTick(space, timeStep);
+        Vector3f tmp = previousLocation;
+        previousLocation = currentLocation;
+        currentLocation = tmp;
+        getRigidBody().getPhysicsLocation(currentLocation);
+        if (!hasSteps) {
+            previousLocation.set(currentLocation);
+            hasSteps = true;
+        }
+        stepSize = timeStep;
+        timeSinceStep = 0f;
+    }
+
+    @Override
+    public void update(float tpf) {
+        super.update(tpf);
+        if (!interpolation || !hasSteps || !isEnabled() || getSpatial() == null) {
+            return;
+        }
+
+        // the steps of this frame run after the update: render one step behind
+        timeSinceStep += tpf;
+        float alpha = FastMath.clamp(timeSinceStep / stepSize, 0f, 1f);
+        FastMath.interpolateLinear(alpha, previousLocation, currentLocation, renderLocation);
+
+        Node parent = getSpatial().getParent();
+        if (parent != null) {
+            parent.worldToLocal(renderLocation, renderLocation);
+        }
+        getSpatial().setLocalTranslation(renderLocation);
+    }
+
+    @Override
+    public void warp(Vector3f location) {
+        super.warp(location);
+        // do not interpolate across the warp
+        previousLocation.set(location);
+        currentLocation.set(location);
+        timeSinceStep = stepSize;
+    }
+
+    @Override
+    public void cloneFields(Cloner cloner, Object original) {
+        super.cloneFields(cloner, original);
+        previousLocation = cloner.clone(previousLocation);
+        currentLocation = cloner.clone(currentLocation);
+        renderLocation = cloner.clone(renderLocation);
+    }
+}
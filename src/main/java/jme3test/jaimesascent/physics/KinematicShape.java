@@ -0,0 +1,60 @@
+package jme3test.jaimesascent.physics;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.scene.Spatial;
+
+import vhacd.VHACDParameters;
+
+/**
+ * The kind of collision shape given to the moving kinematic bodies of the
+ * level (propellers and floating platforms).
+ *
+ * @author capdevon
+ */
+public enum KinematicShape {
+
+    /**
+     * The exact triangle mesh. Accurate, but the most expensive shape for the
+     * narrowphase.
+     */
+    Mesh,
+    /**
+     * A compound of convex hulls generated by V-HACD.
+     */
+    Convex;
+
+    /**
+     * Creates (or loads from the {@link CollisionShapeCache}) the shape for
+     * the given model.
+     *
+     * @param spatial the model (not null)
+     * @return the shape
+     */
+    public CollisionShape create(Spatial spatial) {
+        switch (this) {
+            case Convex:
+                VHACDParameters parameters = new VHACDParameters();
+                parameters.setVoxelResolution(200_000);
+                parameters.setMaxVerticesPerHull(32);
+                return CollisionShapeCache.createVhacdShape(spatial, parameters);
+            default:
+                return CollisionShapeCache.createMeshShape(spatial);
+        }
+    }
+
+    /**
+     * Returns the constant with the given name, ignoring case (e.g. "mesh" or
+     * "convex").
+     *
+     * @param name the name (not null)
+     * @return the constant
+     */
+    public static KinematicShape fromString(String name) {
+        for (KinematicShape shape : values()) {
+            if (shape.name().equalsIgnoreCase(name)) {
+                return shape;
+            }
+        }
+        throw new IllegalArgumentException("Unknown shape type: " + name);
+    }
+}
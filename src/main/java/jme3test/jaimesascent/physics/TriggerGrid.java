@@ -0,0 +1,330 @@
+package jme3test.jaimesascent.physics;
+
+import java.util.Arrays;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * A uniform-grid spatial hash of spherical triggers, for the gameplay
+ * triggers that don't need a ghost object (see {@link TriggerVolume}).
+ * <p>
+ * Each trigger is linked into the buckets of the grid cells overlapped by
+ * its bounds, so finding the triggers containing a point only tests the
+ * few triggers of its cell, whatever the total number. Cells are hashed
+ * into a power-of-two table and everything is stored in primitive arrays:
+ * adding, moving and querying never allocate nor box. Triggers are
+ * identified by the int returned by {@link #add(float, float, float, float)}.
+ * <p>
+ * Not thread-safe: use it from the render thread only.
+ *
+ * @author capdevon
+ */
+public class TriggerGrid {
+
+    private static final int NONE = -1;
+    private static final int MIN_BUCKETS = 64;
+
+    private final float cellSize;
+    private final float invCellSize;
+
+    // triggers, by id
+    private float[] posX, posY, posZ, radius;
+    private int[] stamp;
+    private int triggerCapacity;
+    private int triggerCount;
+    private int freeTrigger = NONE;
+    private int liveCount;
+
+    // bucket entries, singly linked lists
+    private int[] entryTrigger;
+    private int[] entryNext;
+    private int entryCount;
+    private int freeEntry = NONE;
+    private int liveEntries;
+
+    private int[] buckets;
+    private int bucketMask;
+    private int queryStamp;
+
+    /**
+     * @param cellSize the size of a grid cell, about the diameter of the
+     * typical trigger (in world units, &gt;0)
+     * @param expectedTriggers the expected number of triggers (&ge;0)
+     */
+    public TriggerGrid(float cellSize, int expectedTriggers) {
+        if (cellSize <= 0f) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.invCellSize = 1f / cellSize;
+
+        triggerCapacity = Math.max(16, expectedTriggers);
+        posX = new float[triggerCapacity];
+        posY = new float[triggerCapacity];
+        posZ = new float[triggerCapacity];
+        radius = new float[triggerCapacity];
+        stamp = new int[triggerCapacity];
+
+        int entryCapacity = triggerCapacity * 2;
+        entryTrigger = new int[entryCapacity];
+        entryNext = new int[entryCapacity];
+
+        allocateBuckets(entryCapacity);
+    }
+
+    /**
+     * Adds a trigger.
+     *
+     * @param x the X coordinate of the center
+     * @param y the Y coordinate of the center
+     * @param z the Z coordinate of the center
+     * @param r the radius (&ge;0)
+     * @return the id of the trigger
+     */
+    public int add(float x, float y, float z, float r) {
+        int id;
+        if (freeTrigger != NONE) {
+            id = freeTrigger;
+            freeTrigger = stamp[id];
+        } else {
+            if (triggerCount == triggerCapacity) {
+                growTriggers();
+            }
+            id = triggerCount++;
+        }
+        posX[id] = x;
+        posY[id] = y;
+        posZ[id] = z;
+        radius[id] = r;
+        stamp[id] = queryStamp;
+        liveCount++;
+        link(id);
+        if (liveEntries > buckets.length * 2) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Removes a trigger. Its id may be reused by the next add.
+     *
+     * @param id the id of the trigger
+     */
+    public void remove(int id) {
+        checkId(id);
+        unlink(id);
+        radius[id] = -1f;
+        // the free list is threaded through the stamps, unused until re-added
+        stamp[id] = freeTrigger;
+        freeTrigger = id;
+        liveCount--;
+    }
+
+    /**
+     * Moves a trigger.
+     *
+     * @param id the id of the trigger
+     * @param x the new X coordinate of the center
+     * @param y the new Y coordinate of the center
+     * @param z the new Z coordinate of the center
+     */
+    public void move(int id, float x, float y, float z) {
+        checkId(id);
+        float r = radius[id];
+        if (cell(x - r) == cell(posX[id] - r) && cell(x + r) == cell(posX[id] + r)
+                && cell(y - r) == cell(posY[id] - r) && cell(y + r) == cell(posY[id] + r)
+                && cell(z - r) == cell(posZ[id] - r) && cell(z + r) == cell(posZ[id] + r)) {
+            // same cells, no need to relink
+            posX[id] = x;
+            posY[id] = y;
+            posZ[id] = z;
+            return;
+        }
+        unlink(id);
+        posX[id] = x;
+        posY[id] = y;
+        posZ[id] = z;
+        link(id);
+        if (liveEntries > buckets.length * 2) {
+            rehash();
+        }
+    }
+
+    /**
+     * Finds the triggers containing a point.
+     *
+     * @param x the X coordinate of the point
+     * @param y the Y coordinate of the point
+     * @param z the Z coordinate of the point
+     * @param store storage for the ids found (not null)
+     * @return the number of ids written, at most {@code store.length}
+     */
+    public int query(float x, float y, float z, int[] store) {
+        int qs = ++queryStamp;
+        int count = 0;
+        int e = buckets[hash(cell(x), cell(y), cell(z))];
+        while (e != NONE && count < store.length) {
+            int id = entryTrigger[e];
+            // a trigger can be in the same bucket twice, through another cell
+            if (stamp[id] != qs) {
+                stamp[id] = qs;
+                float dx = x - posX[id], dy = y - posY[id], dz = z - posZ[id];
+                float r = radius[id];
+                if (dx * dx + dy * dy + dz * dz < r * r) {
+                    store[count++] = id;
+                }
+            }
+            e = entryNext[e];
+        }
+        return count;
+    }
+
+    /**
+     * Finds the triggers containing a point.
+     *
+     * @param point the location (not null, unaffected)
+     * @param store storage for the ids found (not null)
+     * @return the number of ids written, at most {@code store.length}
+     */
+    public int query(Vector3f point, int[] store) {
+        return query(point.x, point.y, point.z, store);
+    }
+
+    /**
+     * @return the number of triggers
+     */
+    public int size() {
+        return liveCount;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Removes every trigger.
+     */
+    public void clear() {
+        triggerCount = 0;
+        freeTrigger = NONE;
+        liveCount = 0;
+        entryCount = 0;
+        freeEntry = NONE;
+        liveEntries = 0;
+        Arrays.fill(buckets, NONE);
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= triggerCount || radius[id] < 0f) {
+            throw new IllegalArgumentException("No trigger with id " + id);
+        }
+    }
+
+    private int cell(float coord) {
+        return (int) Math.floor(coord * invCellSize);
+    }
+
+    private int hash(int cx, int cy, int cz) {
+        int h = cx * 73856093 ^ cy * 19349663 ^ cz * 83492791;
+        return (h ^ (h >>> 16)) & bucketMask;
+    }
+
+    private void link(int id) {
+        float r = radius[id];
+        int minX = cell(posX[id] - r), maxX = cell(posX[id] + r);
+        int minY = cell(posY[id] - r), maxY = cell(posY[id] + r);
+        int minZ = cell(posZ[id] - r), maxZ = cell(posZ[id] + r);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    int b = hash(cx, cy, cz);
+                    int e = newEntry();
+                    entryTrigger[e] = id;
+                    entryNext[e] = buckets[b];
+                    buckets[b] = e;
+                }
+            }
+        }
+    }
+
+    private void unlink(int id) {
+        float r = radius[id];
+        int minX = cell(posX[id] - r), maxX = cell(posX[id] + r);
+        int minY = cell(posY[id] - r), maxY = cell(posY[id] + r);
+        int minZ = cell(posZ[id] - r), maxZ = cell(posZ[id] + r);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    unlinkFromBucket(hash(cx, cy, cz), id);
+                }
+            }
+        }
+    }
+
+    private void unlinkFromBucket(int b, int id) {
+        int prev = NONE;
+        for (int e = buckets[b]; e != NONE; prev = e, e = entryNext[e]) {
+            if (entryTrigger[e] == id) {
+                if (prev == NONE) {
+                    buckets[b] = entryNext[e];
+                } else {
+                    entryNext[prev] = entryNext[e];
+                }
+                freeEntry(e);
+                return;
+            }
+        }
+    }
+
+    private int newEntry() {
+        liveEntries++;
+        if (freeEntry != NONE) {
+            int e = freeEntry;
+            freeEntry = entryNext[e];
+            return e;
+        }
+        if (entryCount == entryTrigger.length) {
+            int capacity = entryTrigger.length * 2;
+            entryTrigger = Arrays.copyOf(entryTrigger, capacity);
+            entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+        return entryCount++;
+    }
+
+    private void freeEntry(int e) {
+        entryNext[e] = freeEntry;
+        freeEntry = e;
+        liveEntries--;
+    }
+
+    private void growTriggers() {
+        triggerCapacity *= 2;
+        posX = Arrays.copyOf(posX, triggerCapacity);
+        posY = Arrays.copyOf(posY, triggerCapacity);
+        posZ = Arrays.copyOf(posZ, triggerCapacity);
+        radius = Arrays.copyOf(radius, triggerCapacity);
+        stamp = Arrays.copyOf(stamp, triggerCapacity);
+    }
+
+    private void allocateBuckets(int minBuckets) {
+        int n = Integer.highestOneBit(Math.max(MIN_BUCKETS, minBuckets - 1)) << 1;
+        buckets = new int[n];
+        bucketMask = n - 1;
+        Arrays.fill(buckets, NONE);
+    }
+
+    /**
+     * Doubles the number of buckets and links every trigger again.
+     */
+    private void rehash() {
+        allocateBuckets(buckets.length * 2);
+        entryCount = 0;
+        freeEntry = NONE;
+        liveEntries = 0;
+        for (int id = 0; id < triggerCount; id++) {
+            if (radius[id] >= 0f) {
+                link(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package jme3test.jaimesascent.physics;
+
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+
+/**
+ * Receives the enter and exit events of a {@link TriggerVolume}, on the
+ * render thread.
+ *
+ * @author capdevon
+ */
+public interface TriggerListener {
+
+    /**
+     * Called when a target starts overlapping the volume.
+     *
+     * @param trigger the volume
+     * @param other the overlapping object
+     */
+    void onTriggerEnter(TriggerVolume trigger, PhysicsCollisionObject other);
+
+    /**
+     * Called when a target stops overlapping the volume (or is removed).
+     *
+     * @param trigger the volume
+     * @param other the object that left
+     */
+    default void onTriggerExit(TriggerVolume trigger, PhysicsCollisionObject other) {
+    }
+}
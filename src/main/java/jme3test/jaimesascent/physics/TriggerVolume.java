@@ -0,0 +1,69 @@
+package jme3test.jaimesascent.physics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.control.GhostControl;
+
+/**
+ * A ghost object that reports the objects entering and leaving its shape,
+ * see {@link jme3test.jaimesascent.states.TriggerState}.
+ * <p>
+ * By default every dynamic or kinematic body is reported; with
+ * {@link #addTarget(PhysicsCollisionObject)} only the given ones are.
+ *
+ * @author capdevon
+ */
+public class TriggerVolume extends GhostControl {
+
+    private final Set<PhysicsCollisionObject> targets = new HashSet<>();
+    private final List<TriggerListener> listeners = new ArrayList<>();
+
+    /**
+     * No-argument constructor needed by SavableClassUtil.
+     */
+    protected TriggerVolume() {
+    }
+
+    /**
+     * @param shape the shape of the volume (not null)
+     */
+    public TriggerVolume(CollisionShape shape) {
+        super(shape);
+    }
+
+    public void addTarget(PhysicsCollisionObject target) {
+        targets.add(target);
+    }
+
+    public void removeTarget(PhysicsCollisionObject target) {
+        targets.remove(target);
+    }
+
+    /**
+     * @param pco an object overlapping the volume
+     * @return true if its events are reported
+     */
+    public boolean isTarget(PhysicsCollisionObject pco) {
+        if (targets.isEmpty()) {
+            return !pco.isStatic() && !(pco instanceof TriggerVolume);
+        }
+        return targets.contains(pco);
+    }
+
+    public void addListener(TriggerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TriggerListener listener) {
+        listeners.remove(listener);
+    }
+
+    public List<TriggerListener> getListeners() {
+        return listeners;
+    }
+}
@@ -24,6 +24,35 @@ public class CustomChaseCamera extends ChaseCamera {
         super(cam, target, inputManager);
     }
 
+    /**
+     * Returns the current horizontal rotation around the target.
+     *
+     * @return the angle (in radians)
+     */
+    public float getHorizontalRotation() {
+        return rotation;
+    }
+
+    /**
+     * Returns the current vertical rotation around the target.
+     *
+     * @return the angle (in radians)
+     */
+    public float getVerticalRotation() {
+        return vRotation;
+    }
+
+    /**
+     * Moves the camera to the given rotation around the target immediately.
+     *
+     * @param horizontal the horizontal rotation (in radians)
+     * @param vertical the vertical rotation (in radians)
+     */
+    public void setRotation(float horizontal, float vertical) {
+        setDefaultHorizontalRotation(horizontal);
+        setDefaultVerticalRotation(vertical);
+    }
+
     @Override
     public void onAction(String name, boolean keyPressed, float tpf) {
         if (isEnabled()) {
@@ -0,0 +1,25 @@
+package jme3test.jaimesascent.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the action script of an activated checkpoint.
+ *
+ * @author capdevon
+ */
+@Name("jaimesascent.Checkpoint")
+@Label("Checkpoint Activated")
+@Category("JaimesAscent")
+@Description("A checkpoint was reached and its action script executed")
+public class CheckpointEvent extends Event {
+
+    @Label("Checkpoint")
+    public String name;
+
+    @Label("Target")
+    public String target;
+}
@@ -0,0 +1,395 @@
+package jme3test.jaimesascent.profiling;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.input.InputManager;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.Control;
+
+/**
+ * Records how long every tracked AppState and every scene Control takes per
+ * frame, in {@link LogHistogram}s keyed by state and control type.
+ * <p>
+ * Timings are taken by probes placed between the measured objects: a probe
+ * state is attached right after each state passed to
+ * {@link #attach(AppState)}, and a probe control is inserted in front of each
+ * control of the scene (plus one after the last). States attached without a
+ * probe are billed to the next probe, so every state of the game is attached
+ * through {@link #attach(AppStateManager, AppState)}, which also works when
+ * no profiler is present. States attached at the same time have their own
+ * entry ("Name", "Name#2"...), while a state replacing a detached one of the
+ * same class (e.g. on a level change) continues its entry. Spatials whose
+ * controls change are probed again on the next scan. No allocation happens
+ * per frame. Press F9 to write p50/p99/max of every entry to a CSV file.
+ *
+ * @author capdevon
+ */
+public class FrameProfilerState extends BaseAppState implements ActionListener {
+
+    private static final Logger logger = Logger.getLogger(FrameProfilerState.class.getName());
+
+    private static final String DUMP_PROFILE = "DUMP_PROFILE";
+
+    /**
+     * how often the scene is searched for new controls (in seconds)
+     */
+    private static final float RESCAN_INTERVAL = 1f;
+
+    /**
+     * The update and render times of an entry.
+     */
+    private static class Timings {
+
+        private final LogHistogram updateTime = new LogHistogram();
+        private final LogHistogram renderTime = new LogHistogram();
+    }
+
+    /**
+     * Records the timings of a single AppState, attached after it.
+     */
+    private class StateProbe extends AbstractAppState {
+
+        private final String name;
+        private final Timings timings;
+
+        StateProbe(String name, Timings timings) {
+            this.name = name;
+            this.timings = timings;
+        }
+
+        @Override
+        public void update(float tpf) {
+            long now = System.nanoTime();
+            timings.updateTime.record(now - stateMark);
+            stateMark = now;
+        }
+
+        @Override
+        public void render(RenderManager rm) {
+            long now = System.nanoTime();
+            timings.renderTime.record(now - stateMark);
+            stateMark = now;
+        }
+    }
+
+    /**
+     * Closes the timing of the previous control on the spatial and opens the
+     * timing of the next one.
+     */
+    private class ControlProbe implements Control {
+
+        /**
+         * timings of the control that follows this probe (null for the last
+         * probe on a spatial)
+         */
+        private final Timings next;
+
+        ControlProbe(Timings next) {
+            this.next = next;
+        }
+
+        @Override
+        public void update(float tpf) {
+            long now = System.nanoTime();
+            if (pendingUpdate != null) {
+                pendingUpdate.updateTime.record(now - controlMark);
+            }
+            pendingUpdate = next;
+            controlMark = now;
+        }
+
+        @Override
+        public void render(RenderManager rm, ViewPort vp) {
+            long now = System.nanoTime();
+            if (pendingRender != null) {
+                pendingRender.renderTime.record(now - controlRenderMark);
+            }
+            pendingRender = next;
+            controlRenderMark = now;
+        }
+
+        @Override
+        public Control cloneForSpatial(Spatial spatial) {
+            return new ControlProbe(next);
+        }
+
+        @Override
+        public void setSpatial(Spatial spatial) {
+        }
+
+        @Override
+        public void write(JmeExporter ex) throws IOException {
+        }
+
+        @Override
+        public void read(JmeImporter im) throws IOException {
+        }
+    }
+
+    // probes of the attached states, by instance
+    private final Map<AppState, StateProbe> stateProbes = new IdentityHashMap<>();
+    // timings of every state entry ever attached, in order, for the report
+    private final Map<String, Timings> stateTimes = new LinkedHashMap<>();
+    private final Map<String, Timings> controlTimes = new LinkedHashMap<>();
+    private final LogHistogram frameTime = new LogHistogram();
+
+    private final SceneGraphVisitor instrumentVisitor = this::instrument;
+
+    private AppStateManager stateManager;
+    private InputManager inputManager;
+    private long frameStart;
+    private long stateMark;
+    private long controlMark;
+    private long controlRenderMark;
+    private Timings pendingUpdate;
+    private Timings pendingRender;
+    private float rescanTimer;
+
+    @Override
+    public void stateAttached(AppStateManager stateManager) {
+        super.stateAttached(stateManager);
+        this.stateManager = stateManager;
+    }
+
+    /**
+     * Attaches the given state and starts measuring its update and render
+     * time. States must be attached after this profiler.
+     *
+     * @param <T> the type of the state
+     * @param state the state to attach (not null)
+     * @return the attached state
+     */
+    public <T extends AppState> T attach(T state) {
+        if (stateManager == null) {
+            throw new IllegalStateException("FrameProfilerState is not attached");
+        }
+        // the first name not used by an attached state
+        String base = state.getClass().getSimpleName();
+        String name = base;
+        for (int n = 2; isProbed(name); n++) {
+            name = base + "#" + n;
+        }
+        StateProbe probe = new StateProbe(name, stateTimes.computeIfAbsent(name, k -> new Timings()));
+        stateProbes.put(state, probe);
+        stateManager.attach(state);
+        stateManager.attach(probe);
+        return state;
+    }
+
+    private boolean isProbed(String name) {
+        for (StateProbe probe : stateProbes.values()) {
+            if (probe.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Detaches the given state and its probe. Its timings are kept for the
+     * report, and continued by the next state attached under the same name.
+     *
+     * @param state the state to detach (not null)
+     */
+    public void detach(AppState state) {
+        StateProbe probe = stateProbes.remove(state);
+        stateManager.detach(state);
+        if (probe != null) {
+            stateManager.detach(probe);
+        }
+    }
+
+    /**
+     * Attaches the given state, with a probe if a FrameProfilerState is
+     * attached to the manager.
+     *
+     * @param <T> the type of the state
+     * @param stateManager the manager (not null)
+     * @param state the state to attach (not null)
+     * @return the attached state
+     */
+    public static <T extends AppState> T attach(AppStateManager stateManager, T state) {
+        FrameProfilerState profiler = stateManager.getState(FrameProfilerState.class);
+        if (profiler == null) {
+            stateManager.attach(state);
+            return state;
+        }
+        return profiler.attach(state);
+    }
+
+    /**
+     * Detaches the given state, and its probe if it has one.
+     *
+     * @param stateManager the manager (not null)
+     * @param state the state to detach (not null)
+     */
+    public static void detach(AppStateManager stateManager, AppState state) {
+        FrameProfilerState profiler = stateManager.getState(FrameProfilerState.class);
+        if (profiler == null) {
+            stateManager.detach(state);
+        } else {
+            profiler.detach(state);
+        }
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        this.inputManager = app.getInputManager();
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+    }
+
+    @Override
+    protected void onEnable() {
+        inputManager.addMapping(DUMP_PROFILE, new KeyTrigger(KeyInput.KEY_F9));
+        inputManager.addListener(this, DUMP_PROFILE);
+        frameStart = System.nanoTime();
+        rescanTimer = 0;
+    }
+
+    @Override
+    protected void onDisable() {
+        inputManager.deleteMapping(DUMP_PROFILE);
+        inputManager.removeListener(this);
+    }
+
+    @Override
+    public void update(float tpf) {
+        long now = System.nanoTime();
+        frameTime.record(now - frameStart);
+        frameStart = now;
+
+        rescanTimer -= tpf;
+        if (rescanTimer <= 0) {
+            rescanTimer = RESCAN_INTERVAL;
+            instrumentScene();
+        }
+        stateMark = System.nanoTime();
+    }
+
+    @Override
+    public void render(RenderManager rm) {
+        stateMark = System.nanoTime();
+    }
+
+    /**
+     * Places probes around the controls of the scene that are not measured
+     * yet. This runs periodically, but can be called right after new objects
+     * have been added.
+     */
+    public void instrumentScene() {
+        ((SimpleApplication) getApplication()).getRootNode().depthFirstTraversal(instrumentVisitor);
+    }
+
+    private void instrument(Spatial spatial) {
+        int numControls = spatial.getNumControls();
+        if (numControls == 0 || isInstrumented(spatial)) {
+            return;
+        }
+        // controls were added or removed since the last scan: start over
+        for (int i = numControls - 1; i >= 0; i--) {
+            Control control = spatial.getControl(i);
+            if (control instanceof ControlProbe) {
+                spatial.removeControl(control);
+            }
+        }
+        if (spatial.getNumControls() == 0) {
+            return;
+        }
+        for (int i = 0; i < spatial.getNumControls(); i += 2) {
+            Control control = spatial.getControl(i);
+            String name = control.getClass().getSimpleName();
+            if (name.isEmpty()) {
+                name = control.getClass().getName();
+            }
+            Timings timings = controlTimes.computeIfAbsent(name, k -> new Timings());
+            spatial.addControlAt(i, new ControlProbe(timings));
+        }
+        spatial.addControl(new ControlProbe(null));
+    }
+
+    /**
+     * Tells whether every control of the spatial sits between two probes.
+     */
+    private static boolean isInstrumented(Spatial spatial) {
+        int numControls = spatial.getNumControls();
+        if (numControls % 2 == 0) {
+            return false;
+        }
+        for (int i = 0; i < numControls; i++) {
+            boolean probe = spatial.getControl(i) instanceof ControlProbe;
+            if (probe != (i % 2 == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onAction(String name, boolean isPressed, float tpf) {
+        if (DUMP_PROFILE.equals(name) && isPressed) {
+            String date = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            dump("frame-profile-" + date + ".csv");
+        }
+    }
+
+    /**
+     * Writes the p50, p99 and max time (in microseconds) of every entry to a
+     * CSV file.
+     *
+     * @param fileName the destination file
+     */
+    public void dump(String fileName) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
+            out.println("category,name,phase,count,mean_us,p50_us,p99_us,max_us");
+            writeRow(out, "app", "frame", "total", frameTime);
+            for (Map.Entry<String, Timings> entry : stateTimes.entrySet()) {
+                writeRow(out, "state", entry.getKey(), "update", entry.getValue().updateTime);
+                writeRow(out, "state", entry.getKey(), "render", entry.getValue().renderTime);
+            }
+            for (Map.Entry<String, Timings> entry : controlTimes.entrySet()) {
+                writeRow(out, "control", entry.getKey(), "update", entry.getValue().updateTime);
+                writeRow(out, "control", entry.getKey(), "render", entry.getValue().renderTime);
+            }
+            logger.log(Level.INFO, "Frame profile written to {0}", fileName);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to write frame profile", ex);
+        }
+    }
+
+    private void writeRow(PrintWriter out, String category, String name, String phase, LogHistogram h) {
+        out.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%.1f,%.1f,%.1f,%.1f",
+                category, name, phase, h.getCount(),
+                h.getMean() / 1000.0,
+                h.getPercentile(0.50) / 1000.0,
+                h.getPercentile(0.99) / 1000.0,
+                h.getMax() / 1000.0));
+    }
+
+}
@@ -0,0 +1,19 @@
+package jme3test.jaimesascent.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the time the game is paused by the pause menu.
+ *
+ * @author capdevon
+ */
+@Name("jaimesascent.Pause")
+@Label("Game Paused")
+@Category("JaimesAscent")
+@Description("The pause menu was open and the simulation stopped")
+public class PauseEvent extends Event {
+}
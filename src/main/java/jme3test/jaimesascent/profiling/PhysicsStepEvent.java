@@ -0,0 +1,62 @@
+package jme3test.jaimesascent.profiling;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event spanning a single Bullet simulation step.
+ *
+ * @author capdevon
+ */
+@Name("jaimesascent.PhysicsStep")
+@Label("Physics Step")
+@Category("JaimesAscent")
+@Description("A single simulation step of the PhysicsSpace")
+public class PhysicsStepEvent extends Event {
+
+    @Label("Time Step")
+    @Timespan(Timespan.SECONDS)
+    public float timeStep;
+
+    @Label("Rigid Bodies")
+    public int rigidBodies;
+
+    /**
+     * Emits a {@link PhysicsStepEvent} for every step of the PhysicsSpace it
+     * is registered with. No event is created while JFR is not recording it.
+     */
+    public static class Recorder implements PhysicsTickListener {
+
+        private static final EventType TYPE = EventType.getEventType(PhysicsStepEvent.class);
+
+        private PhysicsStepEvent event;
+
+        @Override
+        public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+            if (TYPE.isEnabled()) {
+                event = new PhysicsStepEvent();
+                event.begin();
+            }
+        }
+
+        @Override
+        public void physicsTick(PhysicsSpace space, float timeStep) {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.timeStep = timeStep;
+                    event.rigidBodies = space.countRigidBodies();
+                    event.commit();
+                }
+                event = null;
+            }
+        }
+    }
+}
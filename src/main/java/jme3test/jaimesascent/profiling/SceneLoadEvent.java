@@ -0,0 +1,31 @@
+package jme3test.jaimesascent.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one step of the level setup (scene graph, collision
+ * shapes, sky).
+ *
+ * @author capdevon
+ */
+@Name("jaimesascent.SceneLoad")
+@Label("Scene Load")
+@Category("JaimesAscent")
+@Description("A step of the level setup")
+public class SceneLoadEvent extends Event {
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Asset")
+    public String asset;
+
+    public SceneLoadEvent(String phase, String asset) {
+        this.phase = phase;
+        this.asset = asset;
+    }
+}
@@ -0,0 +1,374 @@
+package jme3test.jaimesascent.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the wall time and the bytes allocated by each named phase of the
+ * startup, on every thread, and prints the critical path of the startup.
+ *
+ * <pre><code>
+ * StartupProfiler.Phase phase = StartupProfiler.begin("load labyrinth.j3o");
+ * ...
+ * phase.end();
+ * </code></pre>
+ *
+ * The time a thread spends blocked on the work of other threads (e.g. the
+ * level loader joining the texture decoders) is measured with
+ * {@link #beginWait(String)}. The report follows the chain of phases that
+ * ends with the call to {@link #printReport()}, going back from the render
+ * thread to the background phase it was idle waiting for, and so on; the
+ * background threads run in parallel, so their time is reported apart
+ * instead of being added to the startup time.
+ * <p>
+ * Recording stops once the report is printed: the phases begun afterwards
+ * (e.g. the loading of the next levels) are not measured nor kept, unless
+ * the profiler is enabled again with {@link #setEnabled(boolean)}.
+ *
+ * @author capdevon
+ */
+public final class StartupProfiler {
+
+    private static final Logger logger = Logger.getLogger(StartupProfiler.class.getName());
+
+    private static final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final ThreadLocal<Deque<Phase>> openPhases = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final List<Phase> phases = new ArrayList<>();
+    private static volatile boolean enabled = true;
+    // returned by begin() while disabled
+    private static final Phase NO_PHASE = new Phase("", null, 0, false);
+
+    private StartupProfiler() {
+    }
+
+    /**
+     * A measured phase, started by {@link StartupProfiler#begin(String)}.
+     */
+    public static final class Phase {
+
+        private final String name;
+        private final String thread;
+        private final Phase parent;
+        private final int depth;
+        private final boolean waiting;
+        private final long startNanos;
+        private final long startBytes;
+        private long endNanos;
+        private long wallNanos;
+        private long childNanos;
+        private long waitNanos;
+        private long allocatedBytes;
+
+        private Phase(String name, Phase parent, int depth, boolean waiting) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.parent = parent;
+            this.depth = depth;
+            this.waiting = waiting;
+            this.startBytes = threadBean.getCurrentThreadAllocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends this phase. Must be called on the thread that began it.
+         */
+        public void end() {
+            if (this == NO_PHASE) {
+                return;
+            }
+            endNanos = System.nanoTime();
+            wallNanos = endNanos - startNanos;
+            allocatedBytes = threadBean.getCurrentThreadAllocatedBytes() - startBytes;
+
+            Deque<Phase> stack = openPhases.get();
+            stack.remove(this);
+            if (parent != null) {
+                parent.childNanos += wallNanos;
+                // the waits nested in this phase are also in its parent
+                parent.waitNanos += waiting ? wallNanos : waitNanos;
+            }
+            if (enabled) {
+                synchronized (phases) {
+                    phases.add(this);
+                }
+            }
+        }
+
+        private long getSelfNanos() {
+            return wallNanos - childNanos;
+        }
+
+        private boolean isInside(Phase ancestor) {
+            for (Phase p = parent; p != null; p = p.parent) {
+                if (p == ancestor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A step of the critical path: a phase, or the time a thread was idle.
+     */
+    private static final class Step {
+
+        private final Phase phase;
+        private final String thread;
+        private final long start;
+        private final long end;
+        private final String label;
+
+        Step(Phase phase, long end) {
+            this.phase = phase;
+            this.thread = phase.thread;
+            this.start = phase.startNanos;
+            this.end = Math.min(end, phase.endNanos);
+            this.label = phase.name;
+        }
+
+        Step(String thread, long start, long end, String label) {
+            this.phase = null;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Starts measuring a phase on the current thread. Phases begun before
+     * this one ends are nested in it.
+     *
+     * @param name the name of the phase
+     * @return the running phase
+     */
+    public static Phase begin(String name) {
+        return begin(name, false);
+    }
+
+    /**
+     * Starts measuring the time the current thread is blocked on the work of
+     * other threads, e.g. while joining futures.
+     *
+     * @param name the name of the wait
+     * @return the running phase
+     */
+    public static Phase beginWait(String name) {
+        return begin(name, true);
+    }
+
+    private static Phase begin(String name, boolean waiting) {
+        if (!enabled) {
+            return NO_PHASE;
+        }
+        Deque<Phase> stack = openPhases.get();
+        Phase phase = new Phase(name, stack.peek(), stack.size(), waiting);
+        stack.push(phase);
+        return phase;
+    }
+
+    /**
+     * Enables or disables the recording of new phases.
+     *
+     * @param enabled true to record (default: true, until the report is
+     * printed)
+     */
+    public static void setEnabled(boolean enabled) {
+        StartupProfiler.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Logs the critical path up to now, the time of each thread and all the
+     * phases ended so far, forgets them and stops recording. Call it on the
+     * render thread.
+     */
+    public static void printReport() {
+        enabled = false;
+        long now = System.nanoTime();
+        String renderThread = Thread.currentThread().getName();
+        List<Phase> report;
+        synchronized (phases) {
+            report = new ArrayList<>(phases);
+            phases.clear();
+        }
+
+        List<Phase> topLevel = new ArrayList<>();
+        for (Phase phase : report) {
+            if (phase.depth == 0) {
+                topLevel.add(phase);
+            }
+        }
+        List<Step> path = criticalPath(topLevel, renderThread, now);
+
+        StringBuilder sb = new StringBuilder();
+        long startup = path.isEmpty() ? 0 : now - path.get(0).start;
+        long origin = path.isEmpty() ? now : path.get(0).start;
+        sb.append(String.format(Locale.ROOT, "Startup critical path: %.1f ms (JVM uptime %d ms)%n",
+                startup / 1e6, ManagementFactory.getRuntimeMXBean().getUptime()));
+        sb.append(String.format(Locale.ROOT, "%10s %10s %10s %10s  %-16s %s%n",
+                "at ms", "ms", "wait ms", "alloc MB", "thread", "phase"));
+
+        long renderBusy = 0;
+        long renderIdle = 0;
+        for (Step step : path) {
+            long length = step.end - step.start;
+            if (step.phase == null) {
+                sb.append(String.format(Locale.ROOT, "%10.1f %10.1f %10s %10s  %-16s (%s)%n",
+                        (step.start - origin) / 1e6, length / 1e6, "", "", step.thread, step.label));
+            } else {
+                sb.append(String.format(Locale.ROOT, "%10.1f %10.1f %10.1f %10.2f  %-16s %s%n",
+                        (step.start - origin) / 1e6, length / 1e6,
+                        step.phase.waitNanos / 1e6,
+                        step.phase.allocatedBytes / (1024.0 * 1024.0),
+                        step.thread, step.label));
+                appendJoins(sb, step.phase, report, topLevel);
+            }
+            if (step.thread.equals(renderThread)) {
+                if (step.phase == null) {
+                    renderIdle += length;
+                } else {
+                    renderBusy += length;
+                }
+            }
+        }
+        sb.append(String.format(Locale.ROOT, "%s: %.1f ms busy, %.1f ms idle waiting on background work%n",
+                renderThread, renderBusy / 1e6, renderIdle / 1e6));
+
+        // the background threads overlap the render thread and each other
+        Map<String, long[]> threads = new LinkedHashMap<>();
+        for (Phase phase : topLevel) {
+            if (!phase.thread.equals(renderThread)) {
+                long[] times = threads.computeIfAbsent(phase.thread, k -> new long[2]);
+                times[0] += phase.wallNanos;
+                times[1] += phase.waiting ? phase.wallNanos : phase.waitNanos;
+            }
+        }
+        sb.append(String.format(Locale.ROOT, "Background threads (in parallel, not part of the sum above):%n"));
+        for (Map.Entry<String, long[]> entry : threads.entrySet()) {
+            long[] times = entry.getValue();
+            sb.append(String.format(Locale.ROOT, "  %-16s %10.1f ms busy, %10.1f ms waiting on joins%n",
+                    entry.getKey(), (times[0] - times[1]) / 1e6, times[1] / 1e6));
+        }
+
+        // every phase, by thread, sorted by self time
+        List<Phase> all = new ArrayList<>(report);
+        all.sort(Comparator.comparing((Phase p) -> !p.thread.equals(renderThread))
+                .thenComparing(p -> p.thread)
+                .thenComparing(Comparator.comparingLong(Phase::getSelfNanos).reversed()));
+        sb.append(String.format(Locale.ROOT, "All phases:%n"));
+        sb.append(String.format(Locale.ROOT, "%10s %10s %10s  %-16s %s%n",
+                "self ms", "wall ms", "alloc MB", "thread", "phase"));
+        for (Phase phase : all) {
+            sb.append(String.format(Locale.ROOT, "%10.1f %10.1f %10.2f  %-16s %s%s%s%n",
+                    phase.getSelfNanos() / 1e6,
+                    phase.wallNanos / 1e6,
+                    phase.allocatedBytes / (1024.0 * 1024.0),
+                    phase.thread,
+                    "  ".repeat(phase.depth),
+                    phase.waiting ? "[wait] " : "",
+                    phase.name));
+        }
+        logger.info(sb.toString());
+    }
+
+    /**
+     * Walks back from the given time on the render thread: each step is the
+     * latest phase of the current thread, unless the thread was idle, in
+     * which case the path continues on the thread whose phase ended last
+     * during the idle time. A background thread with nothing before hands
+     * back to the render thread that started it.
+     */
+    private static List<Step> criticalPath(List<Phase> topLevel, String renderThread, long now) {
+        List<Step> path = new ArrayList<>();
+        String thread = renderThread;
+        long t = now;
+        while (true) {
+            Phase last = null;
+            for (Phase phase : topLevel) {
+                if (phase.thread.equals(thread) && phase.startNanos < t
+                        && (last == null || phase.startNanos > last.startNanos)) {
+                    last = phase;
+                }
+            }
+            if (last != null && last.endNanos >= t) {
+                // running at t
+                path.add(new Step(last, t));
+                t = last.startNanos;
+                continue;
+            }
+
+            long idleFrom = (last != null) ? last.endNanos : Long.MIN_VALUE;
+            Phase handoff = null;
+            for (Phase phase : topLevel) {
+                if (!phase.thread.equals(thread) && phase.endNanos > idleFrom && phase.endNanos <= t
+                        && (handoff == null || phase.endNanos > handoff.endNanos)) {
+                    handoff = phase;
+                }
+            }
+            if (handoff != null) {
+                if (t > handoff.endNanos) {
+                    path.add(new Step(thread, handoff.endNanos, t, "idle, waiting on " + handoff.thread));
+                }
+                thread = handoff.thread;
+                t = handoff.endNanos;
+
+            } else if (last != null) {
+                if (t > last.endNanos) {
+                    path.add(new Step(thread, last.endNanos, t, "idle"));
+                }
+                path.add(new Step(last, t));
+                t = last.startNanos;
+
+            } else if (!thread.equals(renderThread)) {
+                thread = renderThread;
+
+            } else {
+                break;
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Lists the waits nested in a phase of the critical path, each with the
+     * background phase that ended last while waiting.
+     */
+    private static void appendJoins(StringBuilder sb, Phase phase, List<Phase> report, List<Phase> topLevel) {
+        if (phase.waitNanos == 0) {
+            return;
+        }
+        for (Phase wait : report) {
+            if (!wait.waiting || !wait.isInside(phase)) {
+                continue;
+            }
+            Phase awaited = null;
+            for (Phase other : topLevel) {
+                if (!other.thread.equals(wait.thread)
+                        && other.endNanos >= wait.startNanos && other.endNanos <= wait.endNanos
+                        && (awaited == null || other.endNanos > awaited.endNanos)) {
+                    awaited = other;
+                }
+            }
+            sb.append(String.format(Locale.ROOT, "%10s %10.1f %10s %10s  %-16s   [wait] %s%s%n",
+                    "", wait.wallNanos / 1e6, "", "", wait.thread, wait.name,
+                    awaited == null ? "" : " -> " + awaited.name + " on " + awaited.thread));
+        }
+    }
+}
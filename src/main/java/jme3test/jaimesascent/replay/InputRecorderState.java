@@ -0,0 +1,133 @@
+package jme3test.jaimesascent.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.input.InputManager;
+import com.jme3.input.controls.ActionListener;
+
+import jme3test.jaimesascent.GameApplication;
+import jme3test.jaimesascent.player.CustomChaseCamera;
+import jme3test.jaimesascent.states.GameState;
+
+/**
+ * Writes the player actions and the chase camera rotation of the current
+ * session to an {@link InputRecording} file. Frames spent paused are not
+ * recorded.
+ *
+ * @author capdevon
+ */
+public class InputRecorderState extends BaseAppState implements ActionListener {
+
+    private static final Logger logger = Logger.getLogger(InputRecorderState.class.getName());
+
+    private final File file;
+
+    private InputManager inputManager;
+    private CustomChaseCamera chaseCam;
+    private DataOutputStream out;
+    private int frame;
+    private float lastHorizontal = Float.NaN;
+    private float lastVertical = Float.NaN;
+
+    public InputRecorderState(File file) {
+        this.file = file;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        this.inputManager = app.getInputManager();
+        this.chaseCam = getState(GameState.class, true).getChaseCamera();
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(InputRecording.MAGIC);
+            out.writeShort(InputRecording.VERSION);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to create recording " + file, ex);
+            out = null;
+        }
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        if (out != null) {
+            try {
+                out.writeByte(InputRecording.END);
+                out.writeInt(frame);
+                out.close();
+                logger.log(Level.INFO, "Recorded {0} frames to {1}", new Object[] {frame, file});
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to close recording " + file, ex);
+            }
+            out = null;
+        }
+    }
+
+    @Override
+    protected void onEnable() {
+        inputManager.addListener(this, InputRecording.MAPPINGS);
+    }
+
+    @Override
+    protected void onDisable() {
+        inputManager.removeListener(this);
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (out == null || isGamePaused()) {
+            return;
+        }
+        float horizontal = chaseCam.getHorizontalRotation();
+        float vertical = chaseCam.getVerticalRotation();
+        if (horizontal != lastHorizontal || vertical != lastVertical) {
+            lastHorizontal = horizontal;
+            lastVertical = vertical;
+            try {
+                out.writeByte(InputRecording.CAMERA);
+                out.writeInt(frame);
+                out.writeFloat(horizontal);
+                out.writeFloat(vertical);
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+        frame++;
+    }
+
+    @Override
+    public void onAction(String name, boolean isPressed, float tpf) {
+        if (out == null || isGamePaused()) {
+            return;
+        }
+        try {
+            out.writeByte(InputRecording.ACTION);
+            out.writeInt(frame);
+            out.writeByte(InputRecording.indexOf(name));
+            out.writeBoolean(isPressed);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private boolean isGamePaused() {
+        return ((GameApplication) getApplication()).isPaused();
+    }
+
+    private void fail(IOException ex) {
+        logger.log(Level.WARNING, "Recording stopped, failed to write " + file, ex);
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
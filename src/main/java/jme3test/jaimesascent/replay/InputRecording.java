@@ -0,0 +1,143 @@
+package jme3test.jaimesascent.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jme3test.jaimesascent.KeyMapping;
+
+/**
+ * A recorded play session: the player actions and the chase camera rotation,
+ * indexed by the frame in which they happened.
+ * <p>
+ * File layout (big-endian): a header ({@code int} magic, {@code short}
+ * version) followed by records, each starting with a {@code byte} type and an
+ * {@code int} frame index:
+ * <ul>
+ * <li>ACTION: {@code byte} mapping index, {@code boolean} pressed</li>
+ * <li>CAMERA: {@code float} horizontal, {@code float} vertical rotation</li>
+ * <li>END: no payload, its frame is the length of the recording</li>
+ * </ul>
+ *
+ * @author capdevon
+ */
+public class InputRecording {
+
+    static final int MAGIC = 0x4A415250; // "JARP"
+    static final short VERSION = 1;
+
+    static final byte END = 0;
+    static final byte ACTION = 1;
+    static final byte CAMERA = 2;
+
+    /**
+     * the recorded mappings, a record stores the index in this array
+     */
+    static final String[] MAPPINGS = {
+        KeyMapping.MOVE_LEFT,
+        KeyMapping.MOVE_RIGHT,
+        KeyMapping.MOVE_FORWARD,
+        KeyMapping.MOVE_BACKWARD,
+        KeyMapping.JUMP
+    };
+
+    /**
+     * A single decoded record.
+     */
+    static final class Entry {
+
+        final byte type;
+        final int frame;
+        final String mapping;
+        final boolean pressed;
+        final float horizontal;
+        final float vertical;
+
+        Entry(byte type, int frame, String mapping, boolean pressed, float horizontal, float vertical) {
+            this.type = type;
+            this.frame = frame;
+            this.mapping = mapping;
+            this.pressed = pressed;
+            this.horizontal = horizontal;
+            this.vertical = vertical;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final int frameCount;
+
+    private InputRecording(List<Entry> entries, int frameCount) {
+        this.entries = entries;
+        this.frameCount = frameCount;
+    }
+
+    /**
+     * Reads a recording written by {@link InputRecorderState}.
+     *
+     * @param file the file to read
+     * @return a new instance
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public static InputRecording read(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int frameCount = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not an input recording: " + file);
+            }
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException ex) {
+                    break; // recording was not closed, keep what was written
+                }
+                int frame = in.readInt();
+                frameCount = Math.max(frameCount, frame);
+
+                if (type == END) {
+                    break;
+                } else if (type == ACTION) {
+                    String mapping = MAPPINGS[in.readByte()];
+                    boolean pressed = in.readBoolean();
+                    entries.add(new Entry(type, frame, mapping, pressed, 0, 0));
+                } else if (type == CAMERA) {
+                    float horizontal = in.readFloat();
+                    float vertical = in.readFloat();
+                    entries.add(new Entry(type, frame, null, false, horizontal, vertical));
+                } else {
+                    throw new IOException("Unknown record type " + type + " in " + file);
+                }
+            }
+        }
+        return new InputRecording(entries, frameCount);
+    }
+
+    static int indexOf(String mapping) {
+        for (int i = 0; i < MAPPINGS.length; i++) {
+            if (MAPPINGS[i].equals(mapping)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the number of frames covered by this recording.
+     *
+     * @return the frame count
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+}
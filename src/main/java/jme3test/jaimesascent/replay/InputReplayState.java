@@ -0,0 +1,92 @@
+package jme3test.jaimesascent.replay;
+
+import java.util.List;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+
+import jme3test.jaimesascent.controls.ScriptObject;
+import jme3test.jaimesascent.player.CustomChaseCamera;
+import jme3test.jaimesascent.player.PlayerInput;
+import jme3test.jaimesascent.states.GameState;
+
+/**
+ * Plays an {@link InputRecording} back: on each frame the recorded actions
+ * are passed to the player's {@link PlayerInput} and the chase camera is
+ * turned to the recorded rotation.
+ *
+ * @author capdevon
+ */
+public class InputReplayState extends BaseAppState {
+
+    private final InputRecording recording;
+
+    private PlayerInput playerInput;
+    private CustomChaseCamera chaseCam;
+    private ScriptObject finishedScript;
+    private int frame;
+    private int next;
+
+    public InputReplayState(InputRecording recording) {
+        this.recording = recording;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        GameState gameState = getState(GameState.class, true);
+        this.playerInput = gameState.getPlayerNode().getControl(PlayerInput.class);
+        this.chaseCam = gameState.getChaseCamera();
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        if (isFinished()) {
+            return;
+        }
+        List<InputRecording.Entry> entries = recording.getEntries();
+        while (next < entries.size() && entries.get(next).frame <= frame) {
+            InputRecording.Entry entry = entries.get(next++);
+            if (entry.type == InputRecording.ACTION) {
+                playerInput.onAction(entry.mapping, entry.pressed, tpf);
+            } else {
+                chaseCam.setRotation(entry.horizontal, entry.vertical);
+            }
+        }
+        frame++;
+
+        if (isFinished() && finishedScript != null) {
+            finishedScript.execute();
+        }
+    }
+
+    /**
+     * Tests whether all the frames of the recording have been played.
+     *
+     * @return true if finished, otherwise false
+     */
+    public boolean isFinished() {
+        return frame >= recording.getFrameCount();
+    }
+
+    /**
+     * Sets the script executed once, when the last recorded frame has been
+     * played.
+     *
+     * @param finishedScript the script (may be null)
+     */
+    public void setFinishedScript(ScriptObject finishedScript) {
+        this.finishedScript = finishedScript;
+    }
+}
@@ -0,0 +1,87 @@
+package jme3test.jaimesascent.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import jme3tools.optimize.LodGenerator;
+
+/**
+ * Generates LOD levels for the meshes of a model with jME's
+ * {@link LodGenerator} and adds a {@link ScreenSpaceLodControl} to every
+ * geometry that got them.
+ * <p>
+ * Meshes shared by several clones of a model (e.g. those handed out by the
+ * asset cache) are only processed once. Small meshes are skipped: their LOD
+ * levels would save nothing.
+ *
+ * @author capdevon
+ */
+public final class LodBaker {
+
+    private static final Logger logger = Logger.getLogger(LodBaker.class.getName());
+
+    /**
+     * default fraction of the triangles removed by each LOD level
+     */
+    public static final float[] DEFAULT_REDUCTIONS = {0.5f, 0.75f, 0.9f};
+    /**
+     * default minimum number of triangles of a mesh to generate LODs for
+     */
+    public static final int DEFAULT_MIN_TRIANGLES = 500;
+
+    private LodBaker() {
+    }
+
+    /**
+     * Generates the default LOD levels for the meshes of the model.
+     *
+     * @param model the model to process (not null)
+     * @return the number of geometries with LOD levels
+     */
+    public static int bake(Spatial model) {
+        return bake(model, DEFAULT_MIN_TRIANGLES, DEFAULT_REDUCTIONS);
+    }
+
+    /**
+     * Generates LOD levels for the meshes of the model.
+     *
+     * @param model the model to process (not null)
+     * @param minTriangles the minimum number of triangles of a mesh
+     * @param reductions the fraction of triangles removed by each level
+     * (increasing, each in [0,1])
+     * @return the number of geometries with LOD levels
+     */
+    public static int bake(Spatial model, int minTriangles, float... reductions) {
+        List<Geometry> geometries = new ArrayList<>();
+        model.depthFirstTraversal(sp -> {
+            if (sp instanceof Geometry) {
+                geometries.add((Geometry) sp);
+            }
+        });
+
+        int count = 0;
+        int baked = 0;
+        for (Geometry geom : geometries) {
+            Mesh mesh = geom.getMesh();
+            if (mesh.getMode() != Mesh.Mode.Triangles || mesh.getTriangleCount() < minTriangles) {
+                continue;
+            }
+            if (mesh.getNumLodLevels() == 0) {
+                new LodGenerator(geom).bakeLods(LodGenerator.TriangleReductionMethod.PROPORTIONAL, reductions);
+                baked++;
+            }
+            if (geom.getControl(ScreenSpaceLodControl.class) == null) {
+                geom.addControl(new ScreenSpaceLodControl());
+            }
+            count++;
+        }
+        logger.log(Level.INFO, "LOD levels for {0}: {1} geometries ({2} meshes generated)",
+                new Object[] {model.getName(), count, baked});
+        return count;
+    }
+}
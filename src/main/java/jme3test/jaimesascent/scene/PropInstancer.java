@@ -0,0 +1,166 @@
+package jme3test.jaimesascent.scene;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.material.Material;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.instancing.InstancedNode;
+
+/**
+ * Renders the repeated props of a level with hardware instancing: one draw
+ * call per distinct mesh and material, however many copies there are.
+ * <p>
+ * Geometries are considered copies when their meshes have the same content
+ * and their materials are equal by content (exporters usually write a
+ * separate mesh for every object). The copies are made to share a single
+ * Mesh and Material, with {@code UseInstancing} enabled, and the children of
+ * the scene are moved under an {@link InstancedNode}. No transform changes:
+ * the instance data is refreshed every frame from the world transforms of
+ * the original geometries, so they can still be moved by their controls
+ * and kinematic bodies.
+ *
+ * @author capdevon
+ */
+public final class PropInstancer {
+
+    private static final Logger logger = Logger.getLogger(PropInstancer.class.getName());
+
+    private static final String USE_INSTANCING = "UseInstancing";
+
+    /**
+     * Copies of the same prop.
+     */
+    private static class Group {
+
+        private final Mesh mesh;
+        private final Material prototype;
+        private final List<Geometry> geometries = new ArrayList<>();
+
+        Group(Geometry geom) {
+            this.mesh = geom.getMesh();
+            this.prototype = geom.getMaterial();
+        }
+
+        boolean accepts(Geometry geom) {
+            return prototype.contentEquals(geom.getMaterial()) && sameContent(mesh, geom.getMesh());
+        }
+    }
+
+    private PropInstancer() {
+    }
+
+    /**
+     * Instances the repeated geometries of the scene, except the subtrees
+     * matching the filter.
+     *
+     * @param scene the root of the level (not null)
+     * @param skip selects the subtrees to leave alone, e.g. already batched
+     * (not null)
+     * @return the new child of the scene holding its previous children
+     */
+    public static InstancedNode instance(Node scene, Predicate<Spatial> skip) {
+        List<Geometry> candidates = new ArrayList<>();
+        scene.breadthFirstTraversal(sp -> {
+            if (sp instanceof Geometry && !isSkipped(sp, scene, skip)) {
+                Geometry geom = (Geometry) sp;
+                Material mat = geom.getMaterial();
+                if (mat != null && mat.getMaterialDef().getMaterialParam(USE_INSTANCING) != null
+                        && geom.getMesh().getNumLodLevels() == 0) {
+                    candidates.add(geom);
+                }
+            }
+        });
+
+        List<Group> groups = new ArrayList<>();
+        for (Geometry geom : candidates) {
+            Group group = null;
+            for (Group g : groups) {
+                if (g.accepts(geom)) {
+                    group = g;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new Group(geom);
+                groups.add(group);
+            }
+            group.geometries.add(geom);
+        }
+
+        int instanced = 0;
+        int types = 0;
+        for (Group group : groups) {
+            if (group.geometries.size() < 2) {
+                continue;
+            }
+            Material shared = group.prototype.clone();
+            shared.setBoolean(USE_INSTANCING, true);
+            for (Geometry geom : group.geometries) {
+                geom.setMesh(group.mesh);
+                geom.setMaterial(shared);
+            }
+            instanced += group.geometries.size();
+            types++;
+        }
+
+        // same transforms as before: the InstancedNode has the identity
+        InstancedNode instancedNode = new InstancedNode(scene.getName() + "-instanced");
+        for (Spatial child : new ArrayList<>(scene.getChildren())) {
+            instancedNode.attachChild(child);
+        }
+        scene.attachChild(instancedNode);
+        instancedNode.instance();
+
+        logger.log(Level.INFO, "Instanced {0} geometries of {1} as {2} mesh types",
+                new Object[] {instanced, scene.getName(), types});
+        return instancedNode;
+    }
+
+    private static boolean isSkipped(Spatial sp, Node scene, Predicate<Spatial> skip) {
+        for (Spatial s = sp; s != null && s != scene; s = s.getParent()) {
+            if (skip.test(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameContent(Mesh a, Mesh b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.getMode() != b.getMode()
+                || a.getVertexCount() != b.getVertexCount()
+                || a.getTriangleCount() != b.getTriangleCount()
+                || a.getBufferList().size() != b.getBufferList().size()) {
+            return false;
+        }
+        for (VertexBuffer vb : a.getBufferList()) {
+            VertexBuffer other = b.getBuffer(vb.getBufferType());
+            if (other == null
+                    || other.getFormat() != vb.getFormat()
+                    || other.getNumComponents() != vb.getNumComponents()
+                    || !sameData(vb.getData(), other.getData())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameData(Buffer a, Buffer b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        // the equals() of NIO buffers compares the remaining elements
+        return a.duplicate().rewind().equals(b.duplicate().rewind());
+    }
+}
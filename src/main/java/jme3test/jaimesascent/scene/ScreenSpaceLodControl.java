@@ -0,0 +1,122 @@
+package jme3test.jaimesascent.scene;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.util.clone.Cloner;
+
+/**
+ * Selects the LOD level of a geometry from the size of its bounds on the
+ * screen of the camera rendering it (the one moved by the chase camera).
+ * <p>
+ * The size is the radius of the bounds divided by the half-height of the
+ * view frustum at their distance, so 1 means the geometry fills the screen.
+ * Level {@code i + 1} is used below {@code thresholds[i]}.
+ *
+ * @author capdevon
+ */
+public class ScreenSpaceLodControl extends AbstractControl {
+
+    /**
+     * default thresholds, one per LOD level baked by {@link LodBaker}
+     */
+    public static final float[] DEFAULT_THRESHOLDS = {0.25f, 0.1f, 0.04f};
+
+    private float[] thresholds;
+    private float screenSize;
+
+    /**
+     * Constructs a new ScreenSpaceLodControl with the default thresholds.
+     */
+    public ScreenSpaceLodControl() {
+        this(DEFAULT_THRESHOLDS);
+    }
+
+    /**
+     * @param thresholds the screen sizes below which each LOD level is used
+     * (decreasing)
+     */
+    public ScreenSpaceLodControl(float... thresholds) {
+        this.thresholds = thresholds.clone();
+    }
+
+    @Override
+    public void setSpatial(Spatial spatial) {
+        if (spatial != null && !(spatial instanceof Geometry)) {
+            throw new IllegalArgumentException("ScreenSpaceLodControl can only be attached to a Geometry");
+        }
+        super.setSpatial(spatial);
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        // Nothing to update
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+        Geometry geom = (Geometry) spatial;
+        int numLevels = geom.getMesh().getNumLodLevels();
+        if (numLevels == 0) {
+            return;
+        }
+
+        Camera cam = vp.getCamera();
+        BoundingVolume bv = geom.getWorldBound();
+        float radius = radiusOf(bv);
+        float distance = bv.getCenter().distance(cam.getLocation());
+        if (distance <= radius || cam.isParallelProjection()) {
+            screenSize = 1f;
+        } else {
+            float tanHalfFov = cam.getFrustumTop() / cam.getFrustumNear();
+            screenSize = radius / (distance * tanHalfFov);
+        }
+
+        int level = 0;
+        while (level < thresholds.length && level + 1 < numLevels && screenSize < thresholds[level]) {
+            level++;
+        }
+        if (geom.getLodLevel() != level) {
+            geom.setLodLevel(level);
+        }
+    }
+
+    @Override
+    public void cloneFields(Cloner cloner, Object original) {
+        super.cloneFields(cloner, original);
+        thresholds = thresholds.clone();
+    }
+
+    private static float radiusOf(BoundingVolume bv) {
+        if (bv instanceof BoundingSphere) {
+            return ((BoundingSphere) bv).getRadius();
+        } else if (bv instanceof BoundingBox) {
+            BoundingBox bb = (BoundingBox) bv;
+            float x = bb.getXExtent(), y = bb.getYExtent(), z = bb.getZExtent();
+            return (float) Math.sqrt(x * x + y * y + z * z);
+        }
+        return 0f;
+    }
+
+    public float[] getThresholds() {
+        return thresholds.clone();
+    }
+
+    public void setThresholds(float... thresholds) {
+        this.thresholds = thresholds.clone();
+    }
+
+    /**
+     * @return the size on screen computed in the last frame (1 = full height)
+     */
+    public float getScreenSize() {
+        return screenSize;
+    }
+
+}
@@ -0,0 +1,167 @@
+package jme3test.jaimesascent.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.material.Material;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.renderer.queue.RenderQueue.ShadowMode;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.Spatial.BatchHint;
+import jme3tools.optimize.GeometryBatchFactory;
+
+/**
+ * Merges the static geometries of a node that share the same material into
+ * a single geometry each, to cut the number of draw calls.
+ * <p>
+ * Unlike {@link GeometryBatchFactory#optimize(Node)}, spatials driven by a
+ * control (e.g. propellers, floating platforms, bodies with their own
+ * RigidBodyControl) and the subtrees selected by the caller are left
+ * untouched, and the transform of the node is preserved. Materials are
+ * compared by content, since every clone of a model has its own instances.
+ *
+ * @author capdevon
+ */
+public final class StaticBatcher {
+
+    private static final Logger logger = Logger.getLogger(StaticBatcher.class.getName());
+
+    /**
+     * Geometries that can be drawn with the same draw call.
+     */
+    private static class Batch {
+
+        private final Material material;
+        private final Bucket bucket;
+        private final ShadowMode shadowMode;
+        private final Mesh.Mode mode;
+        private final List<Geometry> geometries = new ArrayList<>();
+
+        Batch(Geometry geom) {
+            this.material = geom.getMaterial();
+            this.bucket = geom.getQueueBucket();
+            this.shadowMode = geom.getShadowMode();
+            this.mode = geom.getMesh().getMode();
+        }
+
+        boolean accepts(Geometry geom) {
+            return bucket == geom.getQueueBucket()
+                    && shadowMode == geom.getShadowMode()
+                    && mode == geom.getMesh().getMode()
+                    && material.contentEquals(geom.getMaterial());
+        }
+    }
+
+    private StaticBatcher() {
+    }
+
+    /**
+     * Batches every static geometry under the node.
+     *
+     * @param root the node to optimize (not null)
+     * @return the number of geometries under the node afterwards
+     */
+    public static int batch(Node root) {
+        return batch(root, sp -> false);
+    }
+
+    /**
+     * Batches the static geometries under the node, except the subtrees
+     * matching the filter.
+     *
+     * @param root the node to optimize (not null)
+     * @param keepSeparate selects the subtrees to leave alone (not null)
+     * @return the number of geometries under the node afterwards
+     */
+    public static int batch(Node root, Predicate<Spatial> keepSeparate) {
+        List<Geometry> candidates = new ArrayList<>();
+        int[] separate = {0};
+        for (Spatial child : root.getChildren()) {
+            gather(child, keepSeparate, candidates, separate);
+        }
+
+        List<Batch> batches = new ArrayList<>();
+        for (Geometry geom : candidates) {
+            Batch batch = null;
+            for (Batch b : batches) {
+                if (b.accepts(geom)) {
+                    batch = b;
+                    break;
+                }
+            }
+            if (batch == null) {
+                batch = new Batch(geom);
+                batches.add(batch);
+            }
+            batch.geometries.add(geom);
+        }
+
+        // the merged meshes are in world space: cancel the transform of the node
+        int merged = 0;
+        for (Batch batch : batches) {
+            if (batch.geometries.size() < 2) {
+                continue;
+            }
+            Mesh mesh = new Mesh();
+            GeometryBatchFactory.mergeGeometries(batch.geometries, mesh);
+            mesh.updateBound();
+
+            Geometry geo = new Geometry("batch-" + merged, mesh);
+            geo.setMaterial(batch.material);
+            geo.setQueueBucket(batch.bucket);
+            geo.setShadowMode(batch.shadowMode);
+            geo.setLocalTransform(root.getWorldTransform().invert());
+            for (Geometry g : batch.geometries) {
+                g.removeFromParent();
+            }
+            root.attachChild(geo);
+            merged++;
+        }
+
+        int before = candidates.size() + separate[0];
+        int after = before;
+        for (Batch batch : batches) {
+            if (batch.geometries.size() >= 2) {
+                after -= batch.geometries.size() - 1;
+            }
+        }
+        logger.log(Level.INFO, "Batched {0}: {1} geometries -> {2} ({3} kept separate)",
+                new Object[] {root.getName(), before, after, separate[0]});
+        return after;
+    }
+
+    private static void gather(Spatial sp, Predicate<Spatial> keepSeparate, List<Geometry> candidates, int[] separate) {
+        if (sp.getNumControls() > 0 || sp.getBatchHint() == BatchHint.Never || keepSeparate.test(sp)) {
+            separate[0] += countGeometries(sp);
+
+        } else if (sp instanceof Geometry) {
+            Geometry geom = (Geometry) sp;
+            if (geom.getMaterial() != null && geom.getMesh().getNumLodLevels() == 0) {
+                candidates.add(geom);
+            } else {
+                separate[0]++;
+            }
+
+        } else if (sp instanceof Node) {
+            for (Spatial child : ((Node) sp).getChildren()) {
+                gather(child, keepSeparate, candidates, separate);
+            }
+        }
+    }
+
+    private static int countGeometries(Spatial sp) {
+        int[] count = {0};
+        sp.depthFirstTraversal(s -> {
+            if (s instanceof Geometry) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+}
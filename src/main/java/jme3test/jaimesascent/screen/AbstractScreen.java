@@ -38,7 +38,9 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import com.jme3.system.AppSettings;
 import com.simsilica.lemur.Container;
+import com.simsilica.lemur.Panel;
 import jme3test.jaimesascent.ui.ControlLayout;
+import jme3test.jaimesascent.ui.UIImage;
 
 /**
  * @author wil
@@ -67,6 +69,12 @@ public abstract class AbstractScreen extends BaseAppState {
 
     @Override
     protected void cleanup(Application app) {
+        // give the background images back to the asset cache
+        rootContainer.depthFirstTraversal(sp -> {
+            if (sp instanceof Panel && ((Panel) sp).getBackground() instanceof UIImage) {
+                ((UIImage) ((Panel) sp).getBackground()).release();
+            }
+        });
     }
 
     @Override
@@ -40,7 +40,7 @@ import jme3test.jaimesascent.ui.Window;
  */
 public class GameScreen extends AbstractScreen {
 
-    private Window window;
+    private PauseMenu window;
 
     @Override
     protected void initialize(Application app) {
@@ -62,6 +62,12 @@ public class GameScreen extends AbstractScreen {
 //        layout.setAttribute(ControlLayout.POSITION, menu, new Vector3f(20, 20, 0));
     }
 
+    @Override
+    protected void cleanup(Application app) {
+        super.cleanup(app);
+        window.releaseFonts();
+    }
+
     public Window getWindow() {
         return window;
     }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2024 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.jaimesascent.screen;
+
+import com.jme3.app.Application;
+import com.jme3.font.BitmapFont;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector3f;
+import com.simsilica.lemur.HAlignment;
+import com.simsilica.lemur.Label;
+import com.simsilica.lemur.VAlignment;
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.ui.ControlLayout;
+import jme3test.jaimesascent.ui.UIImage;
+
+/**
+ * Full screen shown while the level is loaded in the background.
+ * 
+ * @author wil
+ */
+public class LoadingScreen extends AbstractScreen {
+
+    private static final String TEXT = "Loading";
+    private static final String LABEL_FONT = "Interface/Fonts/OrbitronBlack.fnt";
+    private static final float DOT_INTERVAL = 0.4f;
+
+    private Label label;
+    private float timer;
+    private int dots;
+
+    @Override
+    protected void initialize(Application app) {
+        super.initialize(app);
+
+        ControlLayout layout = (ControlLayout) rootContainer.getLayout();
+        rootContainer.setBackground(new UIImage("Interface/UI/fill.png", new ColorRGBA(0, 0, 0, 1)));
+
+        BitmapFont labelFont = BudgetedAssetCache.getInstance().loadFont(LABEL_FONT);
+        label = new Label(TEXT);
+        label.setFont(labelFont);
+        label.setColor(ColorRGBA.White);
+        label.setTextHAlignment(HAlignment.Left);
+        label.setTextVAlignment(VAlignment.Center);
+        label.setPreferredSize(new Vector3f(300, 50, 0));
+
+        rootContainer.addChild(label, ControlLayout.Alignment.Center, false);
+        layout.setAttribute(ControlLayout.FONT_SIZE, label, 35.0f);
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        super.cleanup(app);
+        BudgetedAssetCache.getInstance().releaseFont(LABEL_FONT);
+    }
+
+    @Override
+    protected void onEnable() {
+        super.onEnable();
+        timer = 0;
+        dots = 0;
+        label.setText(TEXT);
+    }
+
+    @Override
+    public void update(float tpf) {
+        timer += tpf;
+        if (timer >= DOT_INTERVAL) {
+            timer = 0;
+            dots = (dots + 1) % 4;
+            label.setText(TEXT + ".".repeat(dots));
+        }
+    }
+}
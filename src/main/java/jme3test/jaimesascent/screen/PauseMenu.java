@@ -37,11 +37,12 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.simsilica.lemur.Button;
 import com.simsilica.lemur.Container;
-import com.simsilica.lemur.GuiGlobals;
 import com.simsilica.lemur.HAlignment;
 import com.simsilica.lemur.Label;
 import com.simsilica.lemur.VAlignment;
 import com.simsilica.lemur.style.ElementId;
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.states.LevelManager;
 import jme3test.jaimesascent.ui.ControlLayout;
 import jme3test.jaimesascent.ui.UIImage;
 import jme3test.jaimesascent.ui.Window;
@@ -51,14 +52,17 @@ import jme3test.jaimesascent.ui.Window;
  */
 public class PauseMenu extends Window {
 
+    private static final String BUTTON_FONT = "Interface/Fonts/OrbitronSemiBold.fnt";
+    private static final String LABEL_FONT = "Interface/Fonts/OrbitronBlack.fnt";
+
     public PauseMenu(ControlLayout.RootPane pane, Application app) {
         super(pane, app);
         initComponents();
     }
 
     private void initComponents() {
-        BitmapFont buttonFont = GuiGlobals.getInstance().loadFont("Interface/Fonts/OrbitronSemiBold.fnt");
-        BitmapFont labelFont = GuiGlobals.getInstance().loadFont("Interface/Fonts/OrbitronBlack.fnt");
+        BitmapFont buttonFont = BudgetedAssetCache.getInstance().loadFont(BUTTON_FONT);
+        BitmapFont labelFont = BudgetedAssetCache.getInstance().loadFont(LABEL_FONT);
 
         ControlLayout layout = new ControlLayout(pane);
 
@@ -94,17 +98,39 @@ public class PauseMenu extends Window {
         layout.setAttribute(ControlLayout.POSITION, resumeBtn, new Vector3f(50, 30, 1));
         layout.setAttribute(ControlLayout.FONT_SIZE, resumeBtn, 20.0f);
 
+        Button nextLevelBtn = createButton("Next Level", buttonFont);
+        nextLevelBtn.addClickCommands((source) -> {
+            LevelManager levelManager = app.getStateManager().getState(LevelManager.class);
+            if (levelManager != null) {
+                levelManager.nextLevel();
+            }
+            setVisible(false);
+        });
+
+        leftPanel.addChild(nextLevelBtn, ControlLayout.Alignment.LeftCenter, false);
+        layout.setAttribute(ControlLayout.POSITION, nextLevelBtn, new Vector3f(50, -30, 1));
+        layout.setAttribute(ControlLayout.FONT_SIZE, nextLevelBtn, 20.0f);
+
         Button exitBtn = createButton("Exit", buttonFont);
         exitBtn.addClickCommands((source) -> {
             app.stop(true);
         });
 
         leftPanel.addChild(exitBtn, ControlLayout.Alignment.LeftCenter, false);
-        layout.setAttribute(ControlLayout.POSITION, exitBtn, new Vector3f(50, -30, 1));
+        layout.setAttribute(ControlLayout.POSITION, exitBtn, new Vector3f(50, -90, 1));
         layout.setAttribute(ControlLayout.FONT_SIZE, exitBtn, 20.0f);
         setAlpha(0);
     }
     
+    /**
+     * Gives the fonts of the menu back to the BudgetedAssetCache. The images
+     * are released with the screen that holds the menu.
+     */
+    public void releaseFonts() {
+        BudgetedAssetCache.getInstance().releaseFont(BUTTON_FONT);
+        BudgetedAssetCache.getInstance().releaseFont(LABEL_FONT);
+    }
+
     private Label createLabel(String name, BitmapFont font) {
         Label label = new Label(name);
         label.setFont(font);
@@ -37,6 +37,9 @@ import jme3test.jaimesascent.player.PlayerControl;
 import com.jme3.anim.util.AnimMigrationUtils;
 import com.jme3.app.Application;
 import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
 import com.jme3.bullet.control.BetterCharacterControl;
 import com.jme3.input.ChaseCamera;
 import com.jme3.input.KeyInput;
@@ -57,7 +60,14 @@ import com.jme3.scene.debug.WireBox;
 import jme3test.jaimesascent.GameApplication;
 import jme3test.jaimesascent.controls.Checkpoint;
 import jme3test.jaimesascent.controls.RotatingControl;
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.physics.InterpolatedCharacterControl;
+import jme3test.jaimesascent.physics.TriggerVolume;
+import jme3test.jaimesascent.scene.LodBaker;
 import jme3test.jaimesascent.controls.ScriptObject;
+import jme3test.jaimesascent.profiling.FrameProfilerState;
+import jme3test.jaimesascent.profiling.PauseEvent;
+import jme3test.jaimesascent.profiling.StartupProfiler;
 import jme3test.jaimesascent.screen.GameScreen;
 import jme3test.jaimesascent.ui.WindowListener;
 
@@ -68,21 +78,32 @@ import jme3test.jaimesascent.ui.WindowListener;
  * @author rickard
  * @author capdevon
  */
-public class GameState extends SimpleAppState {
+public class GameState extends SimpleAppState implements PhysicsTickListener {
 
-    private final Vector3f startPosition = new Vector3f(0f, 2f, 0f);
+    private static final String PLAYER_MODEL = "Models/Jaime/Jaime.j3o";
+    private static final Vector3f LEVEL_START = new Vector3f(0f, 2f, 0f);
+
+    private final Vector3f startPosition = LEVEL_START.clone();
     private final float startRotation = FastMath.PI * 0.5f;
+    private final Vector3f physicsLocation = new Vector3f();
+    // set on the physics thread, the camera is reset on the next update
+    private volatile boolean fellOff;
     
     private BulletAppState physicsState;
     private BetterCharacterControl physicsCharacter;
     private Node playerNode;
-    private ChaseCamera chaseCam;
+    private CustomChaseCamera chaseCam;
+    private Geometry checkpointGeo;
+    private TriggerVolume checkpointTrigger;
+    private final TriggerState triggerState = new TriggerState();
     
     private GameScreen uiScreen;
     private boolean gamePaused;
+    private PauseEvent pauseEvent;
 
     @Override
     protected void initialize(Application app) {
+        StartupProfiler.Phase initPhase = StartupProfiler.begin("GameState.initialize");
         refreshCacheFields(app);
         this.physicsState = getState(BulletAppState.class, true);
 
@@ -93,9 +114,14 @@ public class GameState extends SimpleAppState {
         
         setupChaseCam(playerNode);
         
+        FrameProfilerState.attach(getStateManager(), triggerState);
         createCheckpoint();
         
         setupKeys();
+
+        // check the fall between steps, also with ThreadingType.PARALLEL
+        physicsState.getPhysicsSpace().addTickListener(this);
+        initPhase.end();
     }
     
     /**
@@ -103,6 +129,8 @@ public class GameState extends SimpleAppState {
     private final WindowListener windowListener = new WindowListener() {
         @Override
         public void windowOpened() {
+            pauseEvent = new PauseEvent();
+            pauseEvent.begin();
             gamePaused = true;
             setGameEnabled(false);
             inputManager.setCursorVisible(true);
@@ -113,6 +141,10 @@ public class GameState extends SimpleAppState {
             gamePaused = false;
             setGameEnabled(true);
             inputManager.setCursorVisible(false);
+            if (pauseEvent != null) {
+                pauseEvent.commit();
+                pauseEvent = null;
+            }
         }
     };
 
@@ -133,14 +165,52 @@ public class GameState extends SimpleAppState {
 
     @Override
     public void update(float tpf) {
-        if (playerNode.getWorldTranslation().y < -20f) {
-            physicsCharacter.warp(startPosition);
+        if (fellOff) {
+            fellOff = false;
             chaseCam.setDefaultHorizontalRotation(startRotation);
         }
     }
 
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        physicsCharacter.getRigidBody().getPhysicsLocation(physicsLocation);
+        if (physicsLocation.y < -20f) {
+            physicsCharacter.warp(startPosition);
+            fellOff = true;
+        }
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+    }
+
     @Override
     protected void cleanup(Application app) {
+        physicsState.getPhysicsSpace().removeTickListener(this);
+        FrameProfilerState.detach(getStateManager(), triggerState);
+        BudgetedAssetCache.getInstance().releaseModel(PLAYER_MODEL);
+    }
+
+    /**
+     * Moves the player back to the start of the level and restores the
+     * checkpoint, e.g. when a new level has been loaded.
+     */
+    public void respawn() {
+        startPosition.set(LEVEL_START);
+        physicsCharacter.warp(startPosition);
+        chaseCam.setDefaultHorizontalRotation(startRotation);
+
+        triggerState.remove(checkpointTrigger);
+        checkpointGeo.removeFromParent();
+        createCheckpoint();
+    }
+
+    public Node getPlayerNode() {
+        return playerNode;
+    }
+
+    public CustomChaseCamera getChaseCamera() {
+        return chaseCam;
     }
 
     @Override
@@ -181,16 +251,24 @@ public class GameState extends SimpleAppState {
     }
 
     private void setupCharacter() {
-        playerNode = (Node) assetManager.loadModel("Models/Jaime/Jaime.j3o");
+        StartupProfiler.Phase phase = StartupProfiler.begin("load Jaime.j3o");
+        playerNode = (Node) BudgetedAssetCache.getInstance().loadModel(PLAYER_MODEL);
+        phase.end();
         playerNode.setLocalScale(1.50f);
         playerNode.setLocalTranslation(startPosition);
         playerNode.setShadowMode(ShadowMode.CastAndReceive);
 
         // Since Jaime was created using the old animation system
         // it needs to be converted to the new one.
+        phase = StartupProfiler.begin("AnimMigrationUtils.migrate");
         AnimMigrationUtils.migrate(playerNode);
+        phase.end();
+
+        phase = StartupProfiler.begin("bakeLods Jaime");
+        LodBaker.bake(playerNode);
+        phase.end();
         
-        physicsCharacter = new BetterCharacterControl(0.5f, 2.2f, 1f);
+        physicsCharacter = new InterpolatedCharacterControl(0.5f, 2.2f, 1f);
         playerNode.addControl(physicsCharacter);
         physicsState.getPhysicsSpace().add(physicsCharacter);
 
@@ -211,12 +289,22 @@ public class GameState extends SimpleAppState {
             @Override
             public void execute() {
                 startPosition.set(geo.getWorldTranslation());
+                triggerState.remove(checkpointTrigger);
                 checkpoint.destroy();
             }
         });
         
         geo.setLocalTranslation(4.5f, 12.25f, -5.55f);
         getRootNode().attachChild(geo);
+        checkpointGeo = geo;
+
+        // only the character can activate it
+        TriggerVolume trigger = new TriggerVolume(new SphereCollisionShape(checkpoint.getActivationRadius()));
+        geo.addControl(trigger);
+        trigger.addTarget(physicsCharacter.getRigidBody());
+        trigger.addListener(checkpoint);
+        triggerState.add(trigger);
+        checkpointTrigger = trigger;
     }
 
     private Geometry makeGeometry(String name, Mesh mesh, ColorRGBA color) {
@@ -0,0 +1,195 @@
+package jme3test.jaimesascent.states;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import com.jme3.app.Application;
+
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.controls.ScriptObject;
+import jme3test.jaimesascent.physics.KinematicShape;
+import jme3test.jaimesascent.profiling.FrameProfilerState;
+
+/**
+ * Plays a sequence of levels, each one handled by its own {@link SceneState}.
+ * <p>
+ * While a level is played, the next one is built in the background (model,
+ * collision shapes and sky), unless it is the same level, so that
+ * {@link #nextLevel()} only has to swap the states: the old SceneState
+ * removes its scene, physics bodies, lights and filters on cleanup, and the
+ * preloaded one is attached on its initialization. After every transition the memory high-water mark since
+ * the previous one is logged.
+ *
+ * @author capdevon
+ */
+public class LevelManager extends SimpleAppState {
+
+    private static final Logger logger = Logger.getLogger(LevelManager.class.getName());
+
+    private final List<String> levels;
+    private KinematicShape kinematicShape = KinematicShape.Mesh;
+    private int stressBalls;
+    private ScriptObject levelLoadedScript;
+
+    private int levelIndex;
+    private SceneState currentLevel;
+    private SceneState nextLevel;
+    private long transitionStart;
+
+    /**
+     * Instantiates a manager for the given levels, played in order (and
+     * then again from the first).
+     *
+     * @param levels the asset paths of the level models (not empty)
+     */
+    public LevelManager(String... levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("No levels");
+        }
+        this.levels = Arrays.asList(levels);
+    }
+
+    /**
+     * Sets the kind of collision shape of the moving bodies of every level.
+     *
+     * @param kinematicShape the shape type (not null, default: Mesh)
+     */
+    public void setKinematicShape(KinematicShape kinematicShape) {
+        this.kinematicShape = kinematicShape;
+    }
+
+    /**
+     * Sets the number of extra rolling balls thrown in every level.
+     *
+     * @param stressBalls the number of balls (default: 0)
+     */
+    public void setStressBalls(int stressBalls) {
+        this.stressBalls = stressBalls;
+    }
+
+    /**
+     * Sets the script executed on the render thread every time a level has
+     * been attached to the scene.
+     *
+     * @param levelLoadedScript the script (may be null)
+     */
+    public void setLevelLoadedScript(ScriptObject levelLoadedScript) {
+        this.levelLoadedScript = levelLoadedScript;
+    }
+
+    /**
+     * @return the state of the level being played (or loaded)
+     */
+    public SceneState getCurrentLevel() {
+        return currentLevel;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        refreshCacheFields(app);
+        resetPeakUsage();
+        transitionStart = System.nanoTime();
+        currentLevel = createLevel(levelIndex);
+        FrameProfilerState.attach(getStateManager(), currentLevel);
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        FrameProfilerState.detach(getStateManager(), currentLevel);
+        if (nextLevel != null) {
+            nextLevel.discard();
+            nextLevel = null;
+        }
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    /**
+     * Tears down the current level and brings up the next one. Does nothing
+     * while a level is still being loaded.
+     */
+    public void nextLevel() {
+        if (!currentLevel.isLoaded()) {
+            return;
+        }
+        transitionStart = System.nanoTime();
+        levelIndex = (levelIndex + 1) % levels.size();
+
+        FrameProfilerState.detach(getStateManager(), currentLevel);
+        currentLevel = (nextLevel != null) ? nextLevel : createLevel(levelIndex);
+        nextLevel = null;
+        FrameProfilerState.attach(getStateManager(), currentLevel);
+    }
+
+    private SceneState createLevel(int index) {
+        SceneState level = new SceneState(levels.get(index));
+        level.setKinematicShape(kinematicShape);
+        level.setStressBalls(stressBalls);
+        level.setLoadedScript(() -> levelLoaded(level));
+        return level;
+    }
+
+    private void levelLoaded(SceneState level) {
+        logTransition(level);
+
+        GameState gameState = getState(GameState.class);
+        if (gameState != null && gameState.isInitialized()) {
+            gameState.respawn();
+        }
+        if (levelLoadedScript != null) {
+            levelLoadedScript.execute();
+        }
+
+        // build the following level while this one is played, unless it is
+        // the same one: a second copy would stay resident for nothing
+        String next = levels.get((levelIndex + 1) % levels.size());
+        if (!next.equals(level.getLevelAsset())) {
+            nextLevel = createLevel((levelIndex + 1) % levels.size());
+            nextLevel.preload(getApplication());
+        }
+    }
+
+    private void logTransition(SceneState level) {
+        long heapPeak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                heapPeak += pool.getPeakUsage().getUsed();
+            }
+        }
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+
+        logger.info(String.format(Locale.ROOT,
+                "Level %s ready in %.1f ms, heap high-water mark %.1f MB (sum of pool peaks), direct buffers %.1f MB, asset cache: %s",
+                level.getLevelAsset(),
+                (System.nanoTime() - transitionStart) / 1e6,
+                heapPeak / (1024.0 * 1024.0),
+                direct / (1024.0 * 1024.0),
+                BudgetedAssetCache.getInstance()));
+        resetPeakUsage();
+    }
+
+    private static void resetPeakUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+}
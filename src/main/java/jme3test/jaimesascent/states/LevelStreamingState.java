@@ -0,0 +1,407 @@
+package jme3test.jaimesascent.states;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.app.Application;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.objects.PhysicsBody;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.Spatial.CullHint;
+
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.physics.CollisionShapeCache;
+import jme3test.jaimesascent.scene.LodBaker;
+import jme3test.jaimesascent.scene.StaticBatcher;
+
+/**
+ * Keeps in the scene, and in the PhysicsSpace, only the level chunks within a
+ * radius of the player, as split by
+ * {@link jme3test.jaimesascent.tools.LevelChunker}.
+ * <p>
+ * Chunks entering the radius are loaded (model and collision shape) on a
+ * background thread and attached on the next update; chunks leaving it (plus
+ * a margin, to avoid thrashing at the border) are detached, removed from
+ * physics and released to the {@link BudgetedAssetCache}. The chunk under the player is
+ * always loaded synchronously if missing, e.g. after a respawn: on the render
+ * thread, unless the loader has already started on it, so it never waits
+ * for the other chunks queued before it.
+ * <p>
+ * If the index has a precomputed visibility set, the chunks that cannot be
+ * seen from the chunk of the camera (nor from its neighbours, the camera
+ * trails the player) are culled.
+ *
+ * @author capdevon
+ */
+public class LevelStreamingState extends SimpleAppState {
+
+    private static final Logger logger = Logger.getLogger(LevelStreamingState.class.getName());
+
+    /**
+     * name of the node of the index holding one placeholder node per chunk
+     */
+    public static final String CHUNKS_NODE = "Chunks";
+    /**
+     * user data of the chunks node: the side of a chunk (Float)
+     */
+    public static final String CHUNK_SIZE = "ChunkSize";
+    /**
+     * user data of a placeholder: the asset path of the chunk (String)
+     */
+    public static final String CHUNK_ASSET = "ChunkAsset";
+    /**
+     * user data of a placeholder: the grid coordinates of the chunk (Integer)
+     */
+    public static final String CHUNK_X = "ChunkX";
+    public static final String CHUNK_Z = "ChunkZ";
+    /**
+     * user data of a placeholder: the names of the chunks visible from it,
+     * separated by spaces (String, optional)
+     */
+    public static final String CHUNK_PVS = "ChunkPvs";
+
+    private static final float UNLOAD_MARGIN = 1.25f;
+    /**
+     * how long cleanup waits for the chunk being loaded (in seconds)
+     */
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    private class Chunk {
+
+        private final Node placeholder;
+        private final String asset;
+        private final int cellX;
+        private final int cellZ;
+        private final Set<String> visibleChunks = new HashSet<>();
+        private Future<Spatial> loading;
+        // taken by whoever loads the chunk first, the loader or the render thread
+        private AtomicBoolean claim;
+        private Spatial model;
+        private int geometryCount;
+
+        Chunk(Node placeholder) {
+            this.placeholder = placeholder;
+            this.asset = placeholder.getUserData(CHUNK_ASSET);
+            this.cellX = placeholder.getUserData(CHUNK_X);
+            this.cellZ = placeholder.getUserData(CHUNK_Z);
+            String pvs = placeholder.getUserData(CHUNK_PVS);
+            if (pvs != null) {
+                visibleChunks.addAll(Arrays.asList(pvs.split(" ")));
+            }
+        }
+
+        boolean isVisibleFrom(Chunk other) {
+            return Math.abs(cellX - other.cellX) <= 1 && Math.abs(cellZ - other.cellZ) <= 1
+                    || other.visibleChunks.contains(placeholder.getName());
+        }
+
+        float distanceSquared(Vector3f localPos) {
+            float dx = (cellX + 0.5f) * chunkSize - localPos.x;
+            float dz = (cellZ + 0.5f) * chunkSize - localPos.z;
+            return dx * dx + dz * dz;
+        }
+
+        boolean contains(Vector3f localPos) {
+            return (int) Math.floor(localPos.x / chunkSize) == cellX
+                    && (int) Math.floor(localPos.z / chunkSize) == cellZ;
+        }
+    }
+
+    private final Node chunksNode;
+    private final float chunkSize;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final Vector3f focusPosition = new Vector3f();
+    private final Vector3f cameraPosition = new Vector3f();
+    private final boolean hasVisibility;
+
+    private float loadRadius;
+    private PhysicsSpace physicsSpace;
+    private ExecutorService executor;
+    private int loadedCount;
+    private boolean visibilityCulling = true;
+    private Chunk cameraChunk;
+    private int culledCount;
+
+    /**
+     * Instantiates a state streaming the chunks of the given node.
+     *
+     * @param chunksNode the {@value #CHUNKS_NODE} node of a level index (not
+     * null)
+     */
+    public LevelStreamingState(Node chunksNode) {
+        this.chunksNode = chunksNode;
+        Float size = chunksNode.getUserData(CHUNK_SIZE);
+        this.chunkSize = size;
+        this.loadRadius = 2 * chunkSize;
+        for (Spatial child : chunksNode.getChildren()) {
+            chunks.add(new Chunk((Node) child));
+        }
+        this.hasVisibility = !chunks.isEmpty() && !chunks.get(0).visibleChunks.isEmpty();
+    }
+
+    /**
+     * Sets the distance (on the XZ plane, from the player to the center of a
+     * chunk) within which chunks are kept loaded.
+     *
+     * @param loadRadius the distance (in world units, default: 2 chunks)
+     */
+    public void setLoadRadius(float loadRadius) {
+        this.loadRadius = loadRadius;
+    }
+
+    public float getLoadRadius() {
+        return loadRadius;
+    }
+
+    /**
+     * @return the number of chunks currently attached to the scene
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * Enables or disables the culling of the chunks not visible from the
+     * camera (ignored if the index has no visibility set).
+     *
+     * @param visibilityCulling true to cull (default: true)
+     */
+    public void setVisibilityCulling(boolean visibilityCulling) {
+        this.visibilityCulling = visibilityCulling;
+    }
+
+    public boolean isVisibilityCulling() {
+        return visibilityCulling;
+    }
+
+    /**
+     * @return the number of geometries of the loaded chunks culled in the
+     * last frame by the visibility set
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        refreshCacheFields(app);
+        this.physicsSpace = getState(BulletAppState.class, true).getPhysicsSpace();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ChunkLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        // the queued loads never start, the running one is waited for
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "Chunk loader still running after {0} s", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Chunk chunk : chunks) {
+            if (chunk.loading != null) {
+                releaseUnattached(chunk);
+            }
+            unload(chunk);
+        }
+    }
+
+    /**
+     * Releases the model of a chunk that was loaded but never attached.
+     */
+    private void releaseUnattached(Chunk chunk) {
+        Future<Spatial> loading = chunk.loading;
+        chunk.loading = null;
+        if (!loading.isDone() || loading.isCancelled()) {
+            // never started: nothing was loaded
+            return;
+        }
+        try {
+            loading.get();
+            BudgetedAssetCache.getInstance().releaseModel(chunk.asset);
+        } catch (ExecutionException ex) {
+            // the load failed, and released what it had acquired
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        GameState gameState = getState(GameState.class);
+        if (gameState == null || !gameState.isInitialized()) {
+            return;
+        }
+        chunksNode.worldToLocal(gameState.getPlayerNode().getWorldTranslation(), focusPosition);
+
+        float loadDistSq = loadRadius * loadRadius;
+        float unloadDistSq = loadDistSq * UNLOAD_MARGIN * UNLOAD_MARGIN;
+
+        for (Chunk chunk : chunks) {
+            if (chunk.loading != null && chunk.loading.isDone()) {
+                attach(chunk);
+            }
+
+            if (chunk.model == null && chunk.contains(focusPosition)) {
+                // the player would fall through: do not wait for the queue
+                if (chunk.loading == null || chunk.claim.compareAndSet(false, true)) {
+                    if (chunk.loading != null) {
+                        chunk.loading.cancel(false);
+                        chunk.loading = null;
+                    }
+                    attach(chunk, loadChunk(chunk.asset));
+                } else {
+                    // already being loaded by the loader
+                    attach(chunk);
+                }
+
+            } else {
+                float distSq = chunk.distanceSquared(focusPosition);
+                if (distSq <= loadDistSq) {
+                    if (chunk.model == null && chunk.loading == null) {
+                        submit(chunk);
+                    }
+                } else if (distSq > unloadDistSq && chunk.model != null) {
+                    unload(chunk);
+                }
+            }
+        }
+        updateVisibility();
+    }
+
+    private void updateVisibility() {
+        chunksNode.worldToLocal(cam.getLocation(), cameraPosition);
+        Chunk current = null;
+        if (hasVisibility && visibilityCulling) {
+            for (Chunk chunk : chunks) {
+                if (chunk.contains(cameraPosition)) {
+                    current = chunk;
+                    break;
+                }
+            }
+        }
+
+        int culled = 0;
+        for (Chunk chunk : chunks) {
+            // outside of the level, or no visibility set: draw everything
+            boolean visible = current == null || chunk.isVisibleFrom(current);
+            chunk.placeholder.setCullHint(visible ? CullHint.Inherit : CullHint.Always);
+            if (!visible && chunk.model != null) {
+                culled += chunk.geometryCount;
+            }
+        }
+
+        if (current != cameraChunk || culled != culledCount) {
+            logger.log(Level.FINE, "Camera in {0}: {1} geometries culled",
+                    new Object[] {current != null ? current.asset : "no chunk", culled});
+        }
+        cameraChunk = current;
+        culledCount = culled;
+    }
+
+    private void submit(Chunk chunk) {
+        AtomicBoolean claim = new AtomicBoolean();
+        chunk.claim = claim;
+        // skipped if the render thread has loaded the chunk in the meantime
+        chunk.loading = executor.submit(() -> claim.compareAndSet(false, true) ? loadChunk(chunk.asset) : null);
+    }
+
+    /**
+     * Loads a chunk, builds its collision shape, batches its geometries by
+     * material and generates their LOD levels. Runs on the loader thread, or
+     * on the render thread for the chunk under the player.
+     */
+    private Spatial loadChunk(String asset) {
+        Spatial model = BudgetedAssetCache.getInstance().loadModel(asset);
+        try {
+            RigidBodyControl rb = new RigidBodyControl(CollisionShapeCache.createMeshShape(model), PhysicsBody.massForStatic);
+            model.addControl(rb);
+            rb.setFriction(0.01f);
+            StaticBatcher.batch((Node) model);
+            LodBaker.bake(model);
+            return model;
+
+        } catch (RuntimeException ex) {
+            BudgetedAssetCache.getInstance().releaseModel(asset);
+            throw ex;
+        }
+    }
+
+    private void attach(Chunk chunk) {
+        Spatial model;
+        try {
+            model = chunk.loading.get();
+            chunk.loading = null;
+
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Failed to load chunk " + chunk.asset, ex.getCause());
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading chunk " + chunk.asset, ex);
+        }
+        attach(chunk, model);
+    }
+
+    private void attach(Chunk chunk, Spatial model) {
+        chunk.model = model;
+        chunk.placeholder.attachChild(model);
+        chunk.geometryCount = countGeometries(model);
+        physicsSpace.addAll(model);
+        loadedCount++;
+        logger.log(Level.FINE, "Loaded {0} ({1} chunks)", new Object[] {chunk.asset, loadedCount});
+    }
+
+    private static int countGeometries(Spatial model) {
+        int[] count = {0};
+        model.depthFirstTraversal(sp -> {
+            if (sp instanceof Geometry) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private void unload(Chunk chunk) {
+        if (chunk.model == null) {
+            return;
+        }
+        physicsSpace.removeAll(chunk.model);
+        chunk.model.removeFromParent();
+        chunk.model = null;
+        BudgetedAssetCache.getInstance().releaseModel(chunk.asset);
+        loadedCount--;
+        logger.log(Level.FINE, "Unloaded {0} ({1} chunks)", new Object[] {chunk.asset, loadedCount});
+    }
+}
@@ -0,0 +1,239 @@
+package jme3test.jaimesascent.states;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.app.Application;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.effect.ParticleEmitter;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.control.Control;
+
+import jme3test.jaimesascent.controls.KinematicTickControl;
+
+/**
+ * Suspends the moving objects of a level that are far from the player and
+ * outside of the view, and resumes them when they become relevant again.
+ * <p>
+ * A suspended object has its controls disabled, its rigid bodies removed
+ * from the PhysicsSpace and its particle emitters stopped. On resume,
+ * objects registered with {@code catchUp} (the kinematic platforms and
+ * propellers) are moved where they would have been, in one go (see
+ * {@link KinematicTickControl#advance(float)}); the others (e.g. the
+ * wrecking ball) continue from where they were suspended.
+ *
+ * @author capdevon
+ */
+public class RelevanceState extends SimpleAppState {
+
+    private static final Logger logger = Logger.getLogger(RelevanceState.class.getName());
+
+    private static final float CATCH_UP_STEP = 1 / 60f;
+    private static final int MAX_CATCH_UP_STEPS = 60;
+    private static final float POSE_TOLERANCE = 1e-3f;
+    private static final float RESUME_MARGIN = 0.9f;
+
+    private static class Entry {
+
+        private final Spatial spatial;
+        private final boolean catchUp;
+        private boolean suspended;
+        private float suspendedTime;
+
+        Entry(Spatial spatial, boolean catchUp) {
+            this.spatial = spatial;
+            this.catchUp = catchUp;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private float radius = 40f;
+    private int suspendedCount;
+
+    /**
+     * Registers an object.
+     *
+     * @param spatial the object (not null)
+     * @param catchUp true to replay the suspended time on resume (only for
+     * objects moved by their controls alone)
+     */
+    public void add(Spatial spatial, boolean catchUp) {
+        entries.add(new Entry(spatial, catchUp));
+    }
+
+    /**
+     * Sets the distance from the player beyond which objects out of view are
+     * suspended.
+     *
+     * @param radius the distance (in world units, default: 40)
+     */
+    public void setRadius(float radius) {
+        this.radius = radius;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return the number of objects currently suspended
+     */
+    public int getSuspendedCount() {
+        return suspendedCount;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        refreshCacheFields(app);
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        // the level is being torn down: nothing to resume
+        entries.clear();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        GameState gameState = getState(GameState.class);
+        if (gameState == null || !gameState.isInitialized()) {
+            return;
+        }
+        Spatial player = gameState.getPlayerNode();
+
+        float suspendDistSq = radius * radius;
+        float resumeDistSq = suspendDistSq * RESUME_MARGIN * RESUME_MARGIN;
+        int planeState = cam.getPlaneState();
+
+        for (Entry entry : entries) {
+            if (entry.suspended) {
+                entry.suspendedTime += tpf;
+            }
+            float distSq = entry.spatial.getWorldBound().distanceSquaredTo(player.getWorldTranslation());
+            cam.setPlaneState(0);
+            boolean visible = cam.contains(entry.spatial.getWorldBound()) != Camera.FrustumIntersect.Outside;
+
+            if (!entry.suspended && !visible && distSq > suspendDistSq) {
+                suspend(entry);
+            } else if (entry.suspended && (visible || distSq < resumeDistSq)) {
+                resume(entry);
+            }
+        }
+        cam.setPlaneState(planeState);
+    }
+
+    private void suspend(Entry entry) {
+        entry.suspended = true;
+        entry.suspendedTime = 0f;
+        setActive(entry.spatial, false);
+        suspendedCount++;
+        logger.log(Level.FINE, "Suspended {0}", entry.spatial.getName());
+    }
+
+    private void resume(Entry entry) {
+        entry.suspended = false;
+        // controls first, so the bodies are added back at the new position:
+        // re-enabling a body copies the transform of its spatial to it
+        setControlsEnabled(entry.spatial, true);
+        if (entry.catchUp) {
+            catchUp(entry.spatial, entry.suspendedTime);
+        }
+        setBodiesEnabled(entry.spatial, true);
+        if (entry.catchUp) {
+            checkCaughtUp(entry.spatial);
+        }
+        setEmittersEnabled(entry.spatial, true);
+        suspendedCount--;
+        logger.log(Level.FINE, "Resumed {0} after {1} s", new Object[] {entry.spatial.getName(), entry.suspendedTime});
+    }
+
+    private static void setActive(Spatial spatial, boolean active) {
+        setControlsEnabled(spatial, active);
+        setBodiesEnabled(spatial, active);
+        setEmittersEnabled(spatial, active);
+    }
+
+    private static void setControlsEnabled(Spatial root, boolean enabled) {
+        root.depthFirstTraversal(sp -> {
+            for (int i = 0; i < sp.getNumControls(); i++) {
+                Control control = sp.getControl(i);
+                if (control instanceof AbstractControl) {
+                    ((AbstractControl) control).setEnabled(enabled);
+                }
+            }
+        });
+    }
+
+    private static void setBodiesEnabled(Spatial root, boolean enabled) {
+        root.depthFirstTraversal(sp -> {
+            RigidBodyControl rb = sp.getControl(RigidBodyControl.class);
+            if (rb != null) {
+                // removes the body from the PhysicsSpace, or adds it back
+                rb.setEnabled(enabled);
+            }
+        });
+    }
+
+    private static void setEmittersEnabled(Spatial root, boolean enabled) {
+        root.depthFirstTraversal(sp -> {
+            if (sp instanceof ParticleEmitter) {
+                ((ParticleEmitter) sp).setEnabled(enabled);
+            }
+        });
+    }
+
+    /**
+     * Checks that the kinematic bodies were added back at the pose computed
+     * by the catch-up, not at the one they were suspended in.
+     */
+    private static void checkCaughtUp(Spatial root) {
+        root.depthFirstTraversal(sp -> {
+            for (int i = 0; i < sp.getNumControls(); i++) {
+                Control control = sp.getControl(i);
+                if (control instanceof KinematicTickControl
+                        && !((KinematicTickControl) control).isAtRecordedPose(POSE_TOLERANCE)) {
+                    logger.log(Level.WARNING, "{0} resumed away from its caught-up pose", sp.getName());
+                }
+            }
+        });
+    }
+
+    /**
+     * Advances the controls by the given time. The kinematic controls jump
+     * there directly; the others are updated in fixed steps, at most
+     * {@value #MAX_CATCH_UP_STEPS} of them, so a long suspension doesn't
+     * stall the frame.
+     */
+    private static void catchUp(Spatial root, float time) {
+        int steps = Math.min((int) (time / CATCH_UP_STEP), MAX_CATCH_UP_STEPS);
+        float remainder = (steps < MAX_CATCH_UP_STEPS) ? time - steps * CATCH_UP_STEP : 0f;
+        root.depthFirstTraversal(sp -> {
+            for (int i = 0; i < sp.getNumControls(); i++) {
+                Control control = sp.getControl(i);
+                if (control instanceof KinematicTickControl) {
+                    KinematicTickControl kinematic = (KinematicTickControl) control;
+                    kinematic.advance(time);
+                    kinematic.resetInterpolation();
+
+                } else if (control instanceof AbstractControl) {
+                    for (int s = 0; s < steps; s++) {
+                        control.update(CATCH_UP_STEP);
+                    }
+                    control.update(remainder);
+                }
+            }
+        });
+    }
+}
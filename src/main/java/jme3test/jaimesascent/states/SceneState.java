@@ -31,15 +31,23 @@
  */
 package jme3test.jaimesascent.states;
 
-import jme3test.jaimesascent.controls.PlatformControl;
-import jme3test.jaimesascent.controls.RotatingControl;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
+import jme3test.jaimesascent.assets.ParallelTextureLoader;
+import jme3test.jaimesascent.controls.KinematicPlatformControl;
+import jme3test.jaimesascent.controls.KinematicRotatingControl;
 import com.jme3.app.Application;
+import com.jme3.asset.ModelKey;
 import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.collision.shapes.CollisionShape;
-import com.jme3.bullet.collision.shapes.SphereCollisionShape;
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.bullet.objects.PhysicsBody;
-import com.jme3.bullet.util.CollisionShapeFactory;
 import com.jme3.effect.ParticleEmitter;
 import com.jme3.effect.ParticleMesh;
 import com.jme3.effect.shapes.EmitterSphereShape;
@@ -52,14 +60,22 @@ import com.jme3.post.FilterPostProcessor;
 import com.jme3.post.filters.FXAAFilter;
 import com.jme3.post.filters.TranslucentBucketFilter;
 import com.jme3.renderer.queue.RenderQueue.ShadowMode;
-import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
-import com.jme3.scene.shape.Sphere;
 import com.jme3.shadow.DirectionalLightShadowFilter;
 import com.jme3.texture.Texture;
 import com.jme3.util.SkyFactory;
-import jme3test.jaimesascent.controls.RollingBall;
+import jme3test.jaimesascent.controls.RollingBallPool;
+import jme3test.jaimesascent.controls.ScriptObject;
+import jme3test.jaimesascent.physics.CollisionShapeCache;
+import jme3test.jaimesascent.physics.KinematicShape;
+import jme3test.jaimesascent.profiling.FrameProfilerState;
+import jme3test.jaimesascent.profiling.PhysicsStepEvent;
+import jme3test.jaimesascent.profiling.SceneLoadEvent;
+import jme3test.jaimesascent.profiling.StartupProfiler;
+import jme3test.jaimesascent.scene.PropInstancer;
+import jme3test.jaimesascent.scene.StaticBatcher;
+import jme3test.jaimesascent.screen.LoadingScreen;
 
 /**
  *
@@ -71,41 +87,248 @@ import jme3test.jaimesascent.controls.RollingBall;
  */
 public class SceneState extends SimpleAppState {
 
+    private static final Logger logger = Logger.getLogger(SceneState.class.getName());
+
+    /**
+     * the level loaded by the no-argument constructor
+     */
+    public static final String DEFAULT_LEVEL = "Scenes/labyrinth.j3o";
+
+    private static final String[] SKY_FACES = {
+        "Textures/Sky/Lagoon/lagoon_west.jpg",
+        "Textures/Sky/Lagoon/lagoon_east.jpg",
+        "Textures/Sky/Lagoon/lagoon_north.jpg",
+        "Textures/Sky/Lagoon/lagoon_south.jpg",
+        "Textures/Sky/Lagoon/lagoon_up.jpg",
+        "Textures/Sky/Lagoon/lagoon_down.jpg"
+    };
+    private static final String BALL_MATERIAL = "Materials/BallMaterial.j3m";
+    private static final String FLAME_TEXTURE = "Effects/Explosion/flame.png";
+    private static final float BALL_RADIUS = 0.9f;
+    /**
+     * how long cleanup waits for the level being built (in seconds)
+     */
+    private static final long LOADER_TIMEOUT = 10;
+    private static final float BALL_HEIGHT = -10f;
+    private static final Vector3f BALL_IMPULSE = new Vector3f(0, 0, -1800f);
+    // spacing of the stress balls above the ball shooter
+    private static final float STRESS_SPACING = 2.5f;
+    private static final int STRESS_ROW = 10;
+
+    private final String levelAsset;
+    private String sceneAsset;
+
     private FilterPostProcessor fpp;
+    private AmbientLight ambient;
+    private DirectionalLight light;
     private BulletAppState physicsState;
+    private final PhysicsStepEvent.Recorder physicsStepRecorder = new PhysicsStepEvent.Recorder();
     private Node rootNode;
     private Node scene;
+    private Node ballNode;
+    private RollingBallPool ballPool;
+    private Material particleMaterial;
+    private final Vector3f ballStart = new Vector3f();
+    private int stressBalls;
+    private Spatial sky;
+    private LevelStreamingState streamingState;
+    private final RelevanceState relevanceState = new RelevanceState();
+
+    private KinematicShape kinematicShape = KinematicShape.Mesh;
+
+    private ExecutorService executor;
+    private ParallelTextureLoader textureLoader;
+    private LoadingScreen loadingScreen;
+    private ScriptObject loadedScript;
+    private boolean levelReady;
+    private boolean loaded;
+    // set by the loader thread once everything has been acquired
+    private volatile boolean loadComplete;
+    private boolean disposed;
+
+    /**
+     * Instantiates a state for the {@link #DEFAULT_LEVEL}.
+     */
+    public SceneState() {
+        this(DEFAULT_LEVEL);
+    }
+
+    /**
+     * Instantiates a state for the given level.
+     *
+     * @param levelAsset the asset path of the level model (not null)
+     */
+    public SceneState(String levelAsset) {
+        this.levelAsset = levelAsset;
+    }
+
+    public String getLevelAsset() {
+        return levelAsset;
+    }
 
     @Override
     protected void initialize(Application app) {
+        StartupProfiler.Phase initPhase = StartupProfiler.begin("SceneState.initialize");
         refreshCacheFields(app);
         this.physicsState = getState(BulletAppState.class, true);
         this.rootNode = getRootNode();
+        physicsState.getPhysicsSpace().addTickListener(physicsStepRecorder);
 
         setupLights();
-        setupScene();
-        loadSky();
+
+        preload(app);
+        if (levelReady) {
+            attachLevel();
+        } else {
+            loadingScreen = getState(LoadingScreen.class);
+            if (loadingScreen != null) {
+                loadingScreen.setEnabled(true);
+            }
+        }
+        initPhase.end();
+    }
+
+    /**
+     * Starts building the level in the background, before this state is
+     * attached. The level is added to the scene as soon as the state is
+     * initialized and the build is complete. Called by initialize() if not
+     * done before.
+     *
+     * @param app the application (not null)
+     */
+    public void preload(Application app) {
+        if (executor != null) {
+            return;
+        }
+        refreshCacheFields(app);
+
+        // build the level in the background, the render thread keeps running
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "SceneLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        textureLoader = new ParallelTextureLoader(BudgetedAssetCache.getInstance());
+        executor.execute(() -> loadLevel(app));
+    }
+
+    /**
+     * Loads the scene, its collision shapes and the sky. Runs on the loader
+     * thread: nothing is attached to the rootNode or the PhysicsSpace here.
+     */
+    private void loadLevel(Application app) {
+        try {
+            StartupProfiler.Phase phase = StartupProfiler.begin("loadLevel");
+            setupScene();
+            loadSky();
+            phase.end();
+            loadComplete = true;
+            app.enqueue(this::levelLoaded);
+
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Failed to load level " + levelAsset, ex);
+            app.enqueue(() -> {
+                throw new IllegalStateException("Failed to load level " + levelAsset, ex);
+            });
+        }
+    }
+
+    private void levelLoaded() {
+        if (disposed) {
+            return;
+        }
+        levelReady = true;
+        if (isInitialized()) {
+            attachLevel();
+        }
+    }
+
+    /**
+     * Adds the loaded level to the scene graph and the PhysicsSpace. Runs on
+     * the render thread.
+     */
+    private void attachLevel() {
+        StartupProfiler.Phase phase = StartupProfiler.begin("SceneState.attachLevel");
+        rootNode.attachChild(scene);
+        rootNode.attachChild(ballNode);
+        rootNode.attachChild(sky);
+        physicsState.getPhysicsSpace().addAll(scene);
+        spawnBalls();
+        if (streamingState != null) {
+            FrameProfilerState.attach(getStateManager(), streamingState);
+        }
+        FrameProfilerState.attach(getStateManager(), relevanceState);
+
+        if (loadingScreen != null) {
+            loadingScreen.setEnabled(false);
+        }
+        loaded = true;
+        phase.end();
+        if (loadedScript != null) {
+            loadedScript.execute();
+        }
+    }
+
+    /**
+     * Sets the kind of collision shape of the propellers and the floating
+     * platforms. Must be called before this state is initialized.
+     *
+     * @param kinematicShape the shape type (not null, default: Mesh)
+     */
+    public void setKinematicShape(KinematicShape kinematicShape) {
+        this.kinematicShape = kinematicShape;
+    }
+
+    /**
+     * Sets the number of extra rolling balls thrown in the level, to measure
+     * how the physics and the particles scale. Must be called before this
+     * state is initialized.
+     *
+     * @param stressBalls the number of balls (default: 0)
+     */
+    public void setStressBalls(int stressBalls) {
+        this.stressBalls = stressBalls;
+    }
+
+    /**
+     * Tests whether the level has been loaded and attached to the scene.
+     *
+     * @return true if loaded, otherwise false
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Sets the script executed on the render thread once the level has been
+     * attached to the scene.
+     *
+     * @param loadedScript the script (may be null)
+     */
+    public void setLoadedScript(ScriptObject loadedScript) {
+        this.loadedScript = loadedScript;
     }
 
     private void loadSky() {
-        String texture = "Textures/Sky/Lagoon/lagoon_";
-        Texture west    = assetManager.loadTexture(texture + "west.jpg");
-        Texture east    = assetManager.loadTexture(texture + "east.jpg");
-        Texture north   = assetManager.loadTexture(texture + "north.jpg");
-        Texture south   = assetManager.loadTexture(texture + "south.jpg");
-        Texture up      = assetManager.loadTexture(texture + "up.jpg");
-        Texture down    = assetManager.loadTexture(texture + "down.jpg");
-
-        Spatial sky = SkyFactory.createSky(assetManager, west, east, north, south, up, down);
+        SceneLoadEvent event = new SceneLoadEvent("loadSky", "Textures/Sky/Lagoon/lagoon_");
+        event.begin();
+        StartupProfiler.Phase phase = StartupProfiler.begin("loadSky");
+
+        // decode the six faces in parallel
+        Texture[] faces = textureLoader.loadTextures(SKY_FACES);
+
+        sky = SkyFactory.createSky(assetManager, faces[0], faces[1], faces[2], faces[3], faces[4], faces[5]);
         sky.setShadowMode(ShadowMode.Off);
-        rootNode.attachChild(sky);
+        phase.end();
+        event.commit();
     }
 
     private void setupLights() {
-        AmbientLight ambient = new AmbientLight();
+        StartupProfiler.Phase phase = StartupProfiler.begin("setupLights (filters)");
+        ambient = new AmbientLight();
         rootNode.addLight(ambient);
         
-        DirectionalLight light = new DirectionalLight(new Vector3f(0.5f, -0.5f, 0f));
+        light = new DirectionalLight(new Vector3f(0.5f, -0.5f, 0f));
         rootNode.addLight(light);
 
         fpp = new FilterPostProcessor(assetManager);
@@ -116,14 +339,30 @@ public class SceneState extends SimpleAppState {
         fpp.addFilter(new FXAAFilter());
         fpp.addFilter(new TranslucentBucketFilter(true)); // enable Soft Particles
         viewPort.addProcessor(fpp);
+        phase.end();
     }
 
     private void setupScene() {
-        scene = (Node) assetManager.loadModel("Scenes/labyrinth.j3o");
+        // prefer the chunked version of the level, see LevelChunker
+        String index = levelAsset.substring(0, levelAsset.lastIndexOf('.')) + "/index.j3o";
+        boolean chunked = assetManager.locateAsset(new ModelKey(index)) != null;
+        sceneAsset = chunked ? index : levelAsset;
+
+        SceneLoadEvent event = new SceneLoadEvent("setupScene", sceneAsset);
+        event.begin();
+
+        StartupProfiler.Phase phase = StartupProfiler.begin("load " + sceneAsset);
+        scene = (Node) BudgetedAssetCache.getInstance().loadModel(sceneAsset);
+        phase.end();
         scene.setShadowMode(ShadowMode.CastAndReceive);
 
-        Spatial statics = scene.getChild("Statics");
-        addStaticRigidBody(statics).setFriction(0.01f);
+        if (chunked) {
+            Node chunks = (Node) scene.getChild(LevelStreamingState.CHUNKS_NODE);
+            streamingState = new LevelStreamingState(chunks);
+        } else {
+            Spatial statics = scene.getChild("Statics");
+            addStaticRigidBody(statics).setFriction(0.01f);
+        }
 
         // FIX
         Spatial cube = scene.getChild("Cube.005");
@@ -145,13 +384,103 @@ public class SceneState extends SimpleAppState {
             Spatial platform = ((Node) scene.getChild("FloatingPlatform." + i)).getChild(0);
             setupPlatform(platform);
         }
-        
-        rootNode.attachChild(scene);
-        physicsState.getPhysicsSpace().addAll(scene);
+
+        if (!chunked) {
+            // after the setup, so the moving pieces already have their controls
+            phase = StartupProfiler.begin("batchStatics");
+            Node statics = (Node) scene.getChild("Statics");
+            StaticBatcher.batch(statics, SceneState::isMovingPiece);
+            phase.end();
+            // no LOD levels: the batches span the whole maze, their bounds
+            // contain the camera and they would always render at level 0
+        }
+
+        // one draw call per kind of prop: the level geometry is batched instead
+        phase = StartupProfiler.begin("instanceProps");
+        PropInstancer.instance(scene, sp -> "Statics".equals(sp.getName())
+                || LevelStreamingState.CHUNKS_NODE.equals(sp.getName()));
+        phase.end();
+        event.commit();
+    }
+
+    private static boolean isMovingPiece(Spatial sp) {
+        String name = sp.getName();
+        return name != null && (name.startsWith("Propeller")
+                || name.startsWith("FloatingPlatform")
+                || name.startsWith("BallShooter"));
     }
 
     @Override
     protected void cleanup(Application app) {
+        disposed = true;
+        stopLoader();
+        if (streamingState != null) {
+            FrameProfilerState.detach(getStateManager(), streamingState);
+        }
+        FrameProfilerState.detach(getStateManager(), relevanceState);
+        if (loadingScreen != null) {
+            loadingScreen.setEnabled(false);
+        }
+
+        PhysicsSpace physicsSpace = physicsState.getPhysicsSpace();
+        if (loaded) {
+            physicsSpace.removeAll(scene);
+            ballPool.releaseAll();
+            scene.removeFromParent();
+            ballNode.removeFromParent();
+            sky.removeFromParent();
+            loaded = false;
+        }
+        releaseAssets();
+        physicsSpace.removeTickListener(physicsStepRecorder);
+
+        rootNode.removeLight(ambient);
+        rootNode.removeLight(light);
+        viewPort.removeProcessor(fpp);
+    }
+
+    /**
+     * Stops the background build of a state that will never be attached
+     * (e.g. a preloaded level that is not played) and releases what it
+     * loaded. Runs on the render thread.
+     */
+    public void discard() {
+        if (executor == null || disposed) {
+            return;
+        }
+        disposed = true;
+        stopLoader();
+        releaseAssets();
+    }
+
+    /**
+     * Stops the loader threads, waiting for the level being built.
+     */
+    private void stopLoader() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(LOADER_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "Loader of {0} still running after {1} s",
+                        new Object[] {levelAsset, LOADER_TIMEOUT});
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        textureLoader.shutdown();
+    }
+
+    private void releaseAssets() {
+        if (loadComplete) {
+            loadComplete = false;
+            // the level may be evicted from now on
+            BudgetedAssetCache cache = BudgetedAssetCache.getInstance();
+            cache.releaseModel(sceneAsset);
+            cache.releaseMaterial(BALL_MATERIAL);
+            cache.releaseTexture(FLAME_TEXTURE);
+            for (String face : SKY_FACES) {
+                cache.releaseTexture(face);
+            }
+        }
     }
 
     @Override
@@ -163,32 +492,43 @@ public class SceneState extends SimpleAppState {
     }
 
     private void setupWreckingBall(Vector3f startPosition) {
+        ballStart.set(startPosition);
 
-        ParticleEmitter emitter = createPerticleEmitter();
+        // all the emitters share one material
+        particleMaterial = new Material(assetManager, "Common/MatDefs/Misc/Particle.j3md");
+        particleMaterial.setFloat("Softness", 3f);
+        particleMaterial.setTexture("Texture", BudgetedAssetCache.getInstance().loadTexture(FLAME_TEXTURE));
 
-        Sphere sphere = new Sphere(16, 16, 0.9f);
-        Geometry geo = new Geometry("Sphere", sphere);
-        Material mat = assetManager.loadMaterial("Materials/BallMaterial.j3m");
-        geo.setMaterial(mat);
-
-        Node node = new Node("RollingBall");
-        node.attachChild(emitter);
-        node.attachChild(geo);
-        node.setLocalTranslation(new Vector3f(0, -20f, 0));
-
-        CollisionShape collShape = new SphereCollisionShape(sphere.getRadius());
-        RigidBodyControl rigidbody = new RigidBodyControl(collShape, 400f);
-        node.addControl(rigidbody);
-        rigidbody.setRestitution(1);
-
-        RollingBall ball = new RollingBall();
-        node.addControl(ball);
-        ball.setHeight(-10f);
-        ball.setStartPosition(startPosition);
-        ball.setImpulse(new Vector3f(0, 0, -1800f));
+        Material mat = BudgetedAssetCache.getInstance().loadMaterial(BALL_MATERIAL);
+        ballPool = new RollingBallPool("RollingBalls", BALL_RADIUS, 400f, mat,
+                this::createPerticleEmitter, 1 + stressBalls);
+        ballNode = ballPool.getNode();
+    }
 
-        rootNode.attachChild(node);
-        physicsState.getPhysicsSpace().add(rigidbody);
+    /**
+     * Throws the wrecking ball, and the stress balls in a grid above it.
+     * Runs on the render thread.
+     */
+    private void spawnBalls() {
+        PhysicsSpace physicsSpace = physicsState.getPhysicsSpace();
+        Node ball = ballPool.spawn(physicsSpace, ballStart, BALL_IMPULSE, BALL_HEIGHT);
+        relevanceState.add(ball, false);
+
+        Vector3f start = new Vector3f();
+        for (int i = 0; i < stressBalls; i++) {
+            int x = i % STRESS_ROW;
+            int z = (i / STRESS_ROW) % STRESS_ROW;
+            int layer = i / (STRESS_ROW * STRESS_ROW);
+            start.set(ballStart).addLocal(
+                    (x - STRESS_ROW / 2) * STRESS_SPACING,
+                    (layer + 2) * STRESS_SPACING,
+                    (z - STRESS_ROW / 2) * STRESS_SPACING);
+            ball = ballPool.spawn(physicsSpace, start, BALL_IMPULSE, BALL_HEIGHT);
+            relevanceState.add(ball, false);
+        }
+        if (stressBalls > 0) {
+            logger.log(Level.INFO, "Spawned {0} stress balls", stressBalls);
+        }
     }
 
     private ParticleEmitter createPerticleEmitter() {
@@ -196,10 +536,7 @@ public class SceneState extends SimpleAppState {
          * Uses Texture from jme3-test-data library!
          */
         ParticleEmitter emitter = new ParticleEmitter("Emitter", ParticleMesh.Type.Triangle, 30);
-        Material mat = new Material(assetManager, "Common/MatDefs/Misc/Particle.j3md");
-        mat.setFloat("Softness", 3f);
-        mat.setTexture("Texture", assetManager.loadTexture("Effects/Explosion/flame.png"));
-        emitter.setMaterial(mat);
+        emitter.setMaterial(particleMaterial);
         emitter.setShape(new EmitterSphereShape(Vector3f.ZERO, 0.6f));
         emitter.setImagesX(2);
         emitter.setImagesY(2); // 2x2 texture animation
@@ -216,21 +553,33 @@ public class SceneState extends SimpleAppState {
     }
 
     private RigidBodyControl addStaticRigidBody(Spatial sp) {
-        CollisionShape collShape = CollisionShapeFactory.createMeshShape(sp);
+        StartupProfiler.Phase phase = StartupProfiler.begin("createMeshShape " + sp.getName());
+        CollisionShape collShape = CollisionShapeCache.createMeshShape(sp);
+        phase.end();
         RigidBodyControl rb = new RigidBodyControl(collShape, PhysicsBody.massForStatic);
         sp.addControl(rb);
         return rb;
     }
 
-    private void setupPropeller(Spatial sp, Vector3f rotAxis) {
-        RigidBodyControl rb = addStaticRigidBody(sp);
+    private RigidBodyControl addKinematicRigidBody(Spatial sp) {
+        StartupProfiler.Phase phase = StartupProfiler.begin("create" + kinematicShape + "Shape " + sp.getName());
+        CollisionShape collShape = kinematicShape.create(sp);
+        phase.end();
+        RigidBodyControl rb = new RigidBodyControl(collShape, PhysicsBody.massForStatic);
+        sp.addControl(rb);
         rb.setKinematic(true);
-        sp.addControl(new RotatingControl(rotAxis));
+        return rb;
+    }
+
+    private void setupPropeller(Spatial sp, Vector3f rotAxis) {
+        addKinematicRigidBody(sp);
+        sp.addControl(new KinematicRotatingControl(rotAxis));
+        relevanceState.add(sp, true);
     }
 
     private void setupPlatform(Spatial sp) {
-        RigidBodyControl rb = addStaticRigidBody(sp);
-        rb.setKinematic(true);
-        sp.addControl(new PlatformControl());
+        addKinematicRigidBody(sp);
+        sp.addControl(new KinematicPlatformControl());
+        relevanceState.add(sp, true);
     }
 }
@@ -0,0 +1,292 @@
+package jme3test.jaimesascent.states;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.app.Application;
+import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.jme3.bullet.collision.PhysicsCollisionGroupListener;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+
+import jme3test.jaimesascent.physics.TriggerListener;
+import jme3test.jaimesascent.physics.TriggerVolume;
+
+/**
+ * Detects the objects entering and leaving {@link TriggerVolume}s, driven by
+ * the broadphase of the PhysicsSpace.
+ * <p>
+ * The volumes live in their own collision group. When the broadphase finds
+ * a new pair between a volume and one of its targets, the volume becomes
+ * active and, after each physics step, its overlapping objects are tested
+ * with a narrowphase contact test; once nothing is inside anymore it goes
+ * back to sleep. Pairs with objects that are not targets (e.g. the static
+ * level) are rejected in the broadphase, so volumes far from any target
+ * cost nothing. The listeners are called on the render thread, during the
+ * update.
+ * <p>
+ * The physics step doesn't allocate: the objects inside each volume are
+ * kept in two lists that are swapped at every step, and the events are
+ * written into a reusable buffer that the update swaps with its own.
+ *
+ * @author capdevon
+ */
+public class TriggerState extends SimpleAppState implements PhysicsTickListener, PhysicsCollisionGroupListener {
+
+    /**
+     * collision group of the trigger volumes
+     */
+    public static final int TRIGGER_GROUP = PhysicsCollisionObject.COLLISION_GROUP_16;
+
+    /**
+     * The objects inside a volume, at the last step and at the one before.
+     */
+    private static class VolumeState {
+
+        private List<PhysicsCollisionObject> current = new ArrayList<>();
+        private List<PhysicsCollisionObject> previous = new ArrayList<>();
+        private boolean active;
+    }
+
+    /**
+     * An enter or exit event, reused once fired.
+     */
+    private static class Event {
+
+        private TriggerVolume volume;
+        private PhysicsCollisionObject other;
+        private boolean enter;
+    }
+
+    /**
+     * A growable array of reusable events.
+     */
+    private static class EventBuffer {
+
+        private Event[] events = new Event[0];
+        private int size;
+
+        void add(TriggerVolume volume, PhysicsCollisionObject other, boolean enter) {
+            if (size == events.length) {
+                int capacity = Math.max(16, events.length * 2);
+                Event[] grown = new Event[capacity];
+                System.arraycopy(events, 0, grown, 0, size);
+                for (int i = size; i < capacity; i++) {
+                    grown[i] = new Event();
+                }
+                events = grown;
+            }
+            Event event = events[size++];
+            event.volume = volume;
+            event.other = other;
+            event.enter = enter;
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                events[i].volume = null;
+                events[i].other = null;
+            }
+            size = 0;
+        }
+    }
+
+    private final List<TriggerVolume> pending = new ArrayList<>();
+    private final Map<TriggerVolume, VolumeState> volumes = new HashMap<>();
+    // accessed on the physics thread only, or while no step is running
+    private final List<TriggerVolume> active = new ArrayList<>();
+    // written by the physics thread, swapped by the update under its lock
+    private EventBuffer stepEvents = new EventBuffer();
+    private EventBuffer frameEvents = new EventBuffer();
+
+    private PhysicsSpace physicsSpace;
+
+    /**
+     * Adds a volume to the PhysicsSpace. The volume must be attached to a
+     * spatial.
+     *
+     * @param volume the volume (not null)
+     */
+    public void add(TriggerVolume volume) {
+        volume.setCollisionGroup(TRIGGER_GROUP);
+        volume.setCollideWithGroups(PhysicsCollisionObject.COLLISION_GROUP_01);
+        if (physicsSpace == null) {
+            pending.add(volume);
+        } else {
+            addVolume(volume);
+        }
+    }
+
+    /**
+     * Removes a volume from the PhysicsSpace, without exit events.
+     *
+     * @param volume the volume (not null)
+     */
+    public void remove(TriggerVolume volume) {
+        pending.remove(volume);
+        VolumeState state = volumes.remove(volume);
+        if (state != null) {
+            physicsSpace.remove(volume);
+            if (state.active) {
+                active.remove(volume);
+            }
+        }
+    }
+
+    /**
+     * @return the number of volumes tested in the last step
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        refreshCacheFields(app);
+        physicsSpace = getState(BulletAppState.class, true).getPhysicsSpace();
+        physicsSpace.addTickListener(this);
+        physicsSpace.addCollisionGroupListener(this, TRIGGER_GROUP);
+        for (TriggerVolume volume : pending) {
+            addVolume(volume);
+        }
+        pending.clear();
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        for (TriggerVolume volume : volumes.keySet()) {
+            physicsSpace.remove(volume);
+        }
+        volumes.clear();
+        active.clear();
+        synchronized (this) {
+            stepEvents.clear();
+        }
+        frameEvents.clear();
+        physicsSpace.removeCollisionGroupListener(TRIGGER_GROUP);
+        physicsSpace.removeTickListener(this);
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    private void addVolume(TriggerVolume volume) {
+        volumes.put(volume, new VolumeState());
+        physicsSpace.add(volume);
+    }
+
+    @Override
+    public void update(float tpf) {
+        synchronized (this) {
+            EventBuffer tmp = frameEvents;
+            frameEvents = stepEvents;
+            stepEvents = tmp;
+        }
+        for (int i = 0; i < frameEvents.size; i++) {
+            Event event = frameEvents.events[i];
+            fire(event.volume, event.other, event.enter);
+        }
+        frameEvents.clear();
+    }
+
+    /**
+     * Called by the broadphase for every new pair involving a volume.
+     */
+    @Override
+    public boolean collide(PhysicsCollisionObject nodeA, PhysicsCollisionObject nodeB) {
+        if (nodeA instanceof TriggerVolume && nodeB instanceof TriggerVolume) {
+            return false;
+        }
+        TriggerVolume volume = (TriggerVolume) (nodeA instanceof TriggerVolume ? nodeA : nodeB);
+        PhysicsCollisionObject other = (volume == nodeA) ? nodeB : nodeA;
+        VolumeState state = volumes.get(volume);
+        if (state == null || !volume.isTarget(other)) {
+            return false;
+        }
+        if (!state.active) {
+            state.active = true;
+            active.add(volume);
+        }
+        return true;
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        for (int i = active.size() - 1; i >= 0; i--) {
+            TriggerVolume volume = active.get(i);
+            VolumeState state = volumes.get(volume);
+
+            List<PhysicsCollisionObject> previous = state.current;
+            List<PhysicsCollisionObject> current = state.previous;
+            state.previous = previous;
+            state.current = current;
+            current.clear();
+
+            int overlapping = volume.getOverlappingCount();
+            for (int k = 0; k < overlapping; k++) {
+                PhysicsCollisionObject other = volume.getOverlapping(k);
+                if (volume.isTarget(other) && space.pairTest(volume, other, null) > 0) {
+                    current.add(other);
+                }
+            }
+
+            if (!sameObjects(current, previous)) {
+                synchronized (this) {
+                    for (int k = 0; k < current.size(); k++) {
+                        if (!previous.contains(current.get(k))) {
+                            stepEvents.add(volume, current.get(k), true);
+                        }
+                    }
+                    for (int k = 0; k < previous.size(); k++) {
+                        if (!current.contains(previous.get(k))) {
+                            stepEvents.add(volume, previous.get(k), false);
+                        }
+                    }
+                }
+            }
+
+            if (current.isEmpty() && overlapping == 0) {
+                // swap with the last one, the order doesn't matter
+                state.active = false;
+                active.set(i, active.get(active.size() - 1));
+                active.remove(active.size() - 1);
+            }
+        }
+    }
+
+    private static boolean sameObjects(List<PhysicsCollisionObject> a, List<PhysicsCollisionObject> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!b.contains(a.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void fire(TriggerVolume volume, PhysicsCollisionObject other, boolean enter) {
+        if (volumes.containsKey(volume)) {
+            for (TriggerListener listener : new ArrayList<>(volume.getListeners())) {
+                if (enter) {
+                    listener.onTriggerEnter(volume, other);
+                } else {
+                    listener.onTriggerExit(volume, other);
+                }
+            }
+        }
+    }
+}
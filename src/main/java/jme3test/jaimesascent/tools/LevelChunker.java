@@ -0,0 +1,397 @@
+package jme3test.jaimesascent.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.collision.CollisionResults;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.math.Ray;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+import com.jme3.util.BufferUtils;
+
+import jme3test.jaimesascent.states.LevelStreamingState;
+
+/**
+ * Splits the static geometry of a level into square chunks on the XZ plane,
+ * for {@link LevelStreamingState}.
+ * <p>
+ * Every triangle of the {@code Statics} node is assigned to the chunk
+ * containing its centroid, and each chunk is saved as its own j3o file. The
+ * rest of the scene is saved as {@code index.j3o}, where the static geometry
+ * is replaced by a {@code Chunks} node holding an empty placeholder node per
+ * chunk. For {@code Scenes/labyrinth.j3o} the output goes to
+ * {@code assets/Scenes/labyrinth/}.
+ * <p>
+ * The chunks are also the cells of a precomputed visibility set: for every
+ * pair of chunks, rays are cast between sample points of the two cells
+ * (at 1 unit and at eye height above the floor of each cell) against the
+ * static geometry, and a chunk is visible from another one if any ray gets
+ * through. The names of the chunks visible from a chunk are stored in its
+ * placeholder, see {@link LevelStreamingState#CHUNK_PVS}.
+ * <p>
+ * Usage: {@code LevelChunker [--scene Scenes/labyrinth.j3o] [--size 16] [--assets assets]
+ * [--samples 3] [--eye-height 6]} (or {@code ./gradlew chunkLevel}).
+ *
+ * @author capdevon
+ */
+public class LevelChunker {
+
+    private static final Logger logger = Logger.getLogger(LevelChunker.class.getName());
+
+    /**
+     * Triangles of a single source geometry that fall in the same chunk.
+     */
+    private static class Piece {
+
+        private final Geometry source;
+        private final Transform transform;
+        private int[] indices = new int[96];
+        private int indexCount;
+
+        Piece(Geometry source, Transform transform) {
+            this.source = source;
+            this.transform = transform;
+        }
+
+        void addTriangle(int a, int b, int c) {
+            if (indexCount + 3 > indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[indexCount++] = a;
+            indices[indexCount++] = b;
+            indices[indexCount++] = c;
+        }
+    }
+
+    /**
+     *
+     * @param args
+     */
+    public static void main(String[] args) throws IOException {
+        String scenePath = "Scenes/labyrinth.j3o";
+        float chunkSize = 16f;
+        File assetsRoot = new File("assets");
+        int samples = 3;
+        float eyeHeight = 6f;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scene" -> scenePath = args[++i];
+                case "--size" -> chunkSize = Float.parseFloat(args[++i]);
+                case "--assets" -> assetsRoot = new File(args[++i]);
+                case "--samples" -> samples = Integer.parseInt(args[++i]);
+                case "--eye-height" -> eyeHeight = Float.parseFloat(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        AssetManager assetManager = new DesktopAssetManager(true);
+        Node scene = (Node) assetManager.loadModel(scenePath);
+        scene.updateGeometricState();
+
+        String chunkDir = scenePath.substring(0, scenePath.lastIndexOf('.'));
+        LevelChunker chunker = new LevelChunker(chunkSize);
+        chunker.setVisibilitySampling(samples, eyeHeight);
+        chunker.split(scene, assetsRoot, chunkDir);
+    }
+
+    private final float chunkSize;
+    private final Map<String, List<Piece>> chunks = new LinkedHashMap<>();
+    private int samples = 3;
+    private float eyeHeight = 6f;
+
+    public LevelChunker(float chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets how the visibility between chunks is sampled.
+     *
+     * @param samples the number of sample points per side of a chunk (&ge;1,
+     * default: 3)
+     * @param eyeHeight the height of the upper sample points above the floor
+     * of a chunk, e.g. of the chase camera (default: 6)
+     */
+    public void setVisibilitySampling(int samples, float eyeHeight) {
+        this.samples = samples;
+        this.eyeHeight = eyeHeight;
+    }
+
+    /**
+     * Splits the Statics node of the scene and writes the chunks and the
+     * index.
+     *
+     * @param scene the level (not null, geometric state updated)
+     * @param assetsRoot the root directory of the assets
+     * @param chunkDir the asset path of the output directory
+     * @throws IOException if a file cannot be written
+     */
+    public void split(Node scene, File assetsRoot, String chunkDir) throws IOException {
+        Node statics = (Node) scene.getChild("Statics");
+        if (statics == null) {
+            throw new IllegalArgumentException("Statics node not found in " + scene.getName());
+        }
+
+        Transform sceneToLocal = scene.getWorldTransform().invert();
+        List<Geometry> geometries = new ArrayList<>();
+        statics.depthFirstTraversal(sp -> {
+            if (sp instanceof Geometry) {
+                geometries.add((Geometry) sp);
+            }
+        });
+        int skipped = 0;
+        for (Geometry geom : geometries) {
+            switch (geom.getMesh().getMode()) {
+                case Triangles, TriangleStrip, TriangleFan -> {
+                    Transform transform = geom.getWorldTransform().clone().combineWithParent(sceneToLocal);
+                    assign(geom, transform);
+                    geom.removeFromParent();
+                }
+                default -> {
+                    logger.log(Level.WARNING, "Keeping {0} in the index: not a triangle mesh", geom.getName());
+                    skipped++;
+                }
+            }
+        }
+
+        File outDir = new File(assetsRoot, chunkDir);
+        outDir.mkdirs();
+
+        // placeholders of the index, loaded at runtime by LevelStreamingState
+        Node chunksNode = new Node(LevelStreamingState.CHUNKS_NODE);
+        chunksNode.setUserData(LevelStreamingState.CHUNK_SIZE, chunkSize);
+        // the chunk meshes are baked in scene coordinates, so the node keeps the identity transform
+
+        Map<String, Node> chunkNodes = new LinkedHashMap<>();
+        Map<String, Node> placeholders = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Piece>> entry : chunks.entrySet()) {
+            String[] cell = entry.getKey().split(",");
+            String name = "chunk_" + cell[0] + "_" + cell[1];
+
+            Node chunk = new Node(name);
+            for (Piece piece : entry.getValue()) {
+                Geometry geo = new Geometry(piece.source.getName(), buildMesh(piece));
+                geo.setMaterial(piece.source.getMaterial());
+                geo.setShadowMode(piece.source.getShadowMode());
+                chunk.attachChild(geo);
+            }
+            BinaryExporter.getInstance().save(chunk, new File(outDir, name + ".j3o"));
+            chunkNodes.put(entry.getKey(), chunk);
+
+            Node placeholder = new Node(name);
+            placeholder.setUserData(LevelStreamingState.CHUNK_ASSET, chunkDir + "/" + name + ".j3o");
+            placeholder.setUserData(LevelStreamingState.CHUNK_X, Integer.parseInt(cell[0]));
+            placeholder.setUserData(LevelStreamingState.CHUNK_Z, Integer.parseInt(cell[1]));
+            chunksNode.attachChild(placeholder);
+            placeholders.put(entry.getKey(), placeholder);
+        }
+
+        computeVisibility(chunkNodes, placeholders);
+
+        if (skipped == 0) {
+            statics.removeFromParent();
+        }
+        scene.attachChild(chunksNode);
+        BinaryExporter.getInstance().save(scene, new File(outDir, "index.j3o"));
+
+        logger.log(Level.INFO, "Split {0} geometries into {1} chunks of {2} units in {3}",
+                new Object[] {geometries.size(), chunks.size(), chunkSize, outDir});
+    }
+
+    /**
+     * Stores in each placeholder the names of the chunks visible from it.
+     */
+    private void computeVisibility(Map<String, Node> chunkNodes, Map<String, Node> placeholders) {
+        Node occluders = new Node("Occluders");
+        for (Node chunk : chunkNodes.values()) {
+            occluders.attachChild(chunk);
+        }
+        occluders.updateGeometricState();
+
+        Map<String, Vector3f[]> points = new LinkedHashMap<>();
+        for (Map.Entry<String, Node> entry : chunkNodes.entrySet()) {
+            points.put(entry.getKey(), samplePoints(entry.getKey(), entry.getValue()));
+        }
+
+        List<String> keys = new ArrayList<>(chunkNodes.keySet());
+        Map<String, StringBuilder> pvs = new LinkedHashMap<>();
+        for (String key : keys) {
+            pvs.put(key, new StringBuilder(placeholders.get(key).getName()));
+        }
+        int visiblePairs = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            for (int j = i + 1; j < keys.size(); j++) {
+                String a = keys.get(i);
+                String b = keys.get(j);
+                if (isVisible(occluders, points.get(a), points.get(b))) {
+                    pvs.get(a).append(' ').append(placeholders.get(b).getName());
+                    pvs.get(b).append(' ').append(placeholders.get(a).getName());
+                    visiblePairs++;
+                }
+            }
+        }
+        for (String key : keys) {
+            placeholders.get(key).setUserData(LevelStreamingState.CHUNK_PVS, pvs.get(key).toString());
+        }
+
+        int pairs = keys.size() * (keys.size() - 1) / 2;
+        logger.log(Level.INFO, "Visibility: {0} of {1} chunk pairs visible", new Object[] {visiblePairs, pairs});
+    }
+
+    private Vector3f[] samplePoints(String key, Node chunk) {
+        String[] cell = key.split(",");
+        int cx = Integer.parseInt(cell[0]);
+        int cz = Integer.parseInt(cell[1]);
+        BoundingBox bounds = (BoundingBox) chunk.getWorldBound();
+        float floorY = bounds.getCenter().y - bounds.getYExtent();
+        float[] heights = {floorY + 1f, floorY + eyeHeight};
+
+        Vector3f[] result = new Vector3f[samples * samples * heights.length];
+        int n = 0;
+        for (int i = 0; i < samples; i++) {
+            for (int k = 0; k < samples; k++) {
+                float x = (cx + (i + 0.5f) / samples) * chunkSize;
+                float z = (cz + (k + 0.5f) / samples) * chunkSize;
+                for (float y : heights) {
+                    result[n++] = new Vector3f(x, y, z);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isVisible(Node occluders, Vector3f[] from, Vector3f[] to) {
+        CollisionResults results = new CollisionResults();
+        Ray ray = new Ray();
+        for (Vector3f a : from) {
+            for (Vector3f b : to) {
+                float distance = a.distance(b);
+                ray.setOrigin(a);
+                ray.setDirection(b.subtract(a).divideLocal(distance));
+                ray.setLimit(distance);
+                results.clear();
+                occluders.collideWith(ray, results);
+                if (results.size() == 0 || results.getClosestCollision().getDistance() >= distance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void assign(Geometry geom, Transform transform) {
+        Mesh mesh = geom.getMesh();
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        IndexBuffer indices = mesh.getIndicesAsList();
+        Map<String, Piece> pieces = new LinkedHashMap<>();
+
+        Vector3f v = new Vector3f();
+        Vector3f centroid = new Vector3f();
+        for (int t = 0; t + 2 < indices.size(); t += 3) {
+            centroid.zero();
+            for (int k = 0; k < 3; k++) {
+                int vi = indices.get(t + k);
+                v.set(positions.get(vi * 3), positions.get(vi * 3 + 1), positions.get(vi * 3 + 2));
+                centroid.addLocal(transform.transformVector(v, v));
+            }
+            centroid.divideLocal(3);
+
+            int cx = (int) Math.floor(centroid.x / chunkSize);
+            int cz = (int) Math.floor(centroid.z / chunkSize);
+            String key = cx + "," + cz;
+            Piece piece = pieces.get(key);
+            if (piece == null) {
+                piece = new Piece(geom, transform);
+                pieces.put(key, piece);
+                chunks.computeIfAbsent(key, k -> new ArrayList<>()).add(piece);
+            }
+            piece.addTriangle(indices.get(t), indices.get(t + 1), indices.get(t + 2));
+        }
+    }
+
+    /**
+     * Copies the vertices used by the piece into a new mesh, in the
+     * coordinates of the scene.
+     */
+    private static Mesh buildMesh(Piece piece) {
+        Mesh source = piece.source.getMesh();
+        int[] remap = new int[source.getVertexCount()];
+        Arrays.fill(remap, -1);
+        int[] vertices = new int[piece.indexCount];
+        int vertexCount = 0;
+        for (int i = 0; i < piece.indexCount; i++) {
+            int old = piece.indices[i];
+            if (remap[old] < 0) {
+                remap[old] = vertexCount;
+                vertices[vertexCount++] = old;
+            }
+        }
+
+        Mesh mesh = new Mesh();
+        Vector3f tmp = new Vector3f();
+        for (VertexBuffer vb : source.getBufferList()) {
+            if (vb.getBufferType() == VertexBuffer.Type.Index) {
+                continue;
+            }
+            if (vb.getFormat() != VertexBuffer.Format.Float) {
+                logger.log(Level.WARNING, "Dropping non-float buffer {0} of {1}",
+                        new Object[] {vb.getBufferType(), piece.source.getName()});
+                continue;
+            }
+            int comps = vb.getNumComponents();
+            FloatBuffer src = (FloatBuffer) vb.getData();
+            FloatBuffer dst = BufferUtils.createFloatBuffer(vertexCount * comps);
+            for (int i = 0; i < vertexCount; i++) {
+                int base = vertices[i] * comps;
+                switch (vb.getBufferType()) {
+                    case Position -> {
+                        tmp.set(src.get(base), src.get(base + 1), src.get(base + 2));
+                        piece.transform.transformVector(tmp, tmp);
+                        dst.put(tmp.x).put(tmp.y).put(tmp.z);
+                    }
+                    case Normal, Tangent -> {
+                        tmp.set(src.get(base), src.get(base + 1), src.get(base + 2));
+                        piece.transform.getRotation().mult(tmp, tmp).normalizeLocal();
+                        dst.put(tmp.x).put(tmp.y).put(tmp.z);
+                        for (int c = 3; c < comps; c++) {
+                            dst.put(src.get(base + c)); // tangent handedness
+                        }
+                    }
+                    default -> {
+                        for (int c = 0; c < comps; c++) {
+                            dst.put(src.get(base + c));
+                        }
+                    }
+                }
+            }
+            dst.flip();
+            mesh.setBuffer(vb.getBufferType(), comps, dst);
+        }
+
+        IndexBuffer ib = IndexBuffer.createIndexBuffer(vertexCount, piece.indexCount);
+        for (int i = 0; i < piece.indexCount; i++) {
+            ib.put(i, remap[piece.indices[i]]);
+        }
+        mesh.setBuffer(VertexBuffer.Type.Index, 3, ib.getFormat(), ib.getBuffer());
+        mesh.updateCounts();
+        mesh.updateBound();
+        return mesh;
+    }
+}
@@ -605,6 +605,16 @@ public class ControlLayout extends AbstractGuiComponent implements GuiLayout {
         }
     }
 
+    /**
+     * Devuelve el {@link Control} que gestiona un nodo hijo de este diseño.
+     *
+     * @param tar nodo hijo - objetivo.
+     * @return control del nodo, o <code>null</code> si no pertenece al diseño.
+     */
+    Control getChildControl(Node tar) {
+        return children.get(tar);
+    }
+
     /**
      * Método encargado de devolver un atributo que usa un nodo hijo
      * perteneciente a este diseño {@link ControlLayout}.
@@ -31,22 +31,27 @@
  */
 package jme3test.jaimesascent.ui;
 
+import com.jme3.asset.TextureKey;
 import com.jme3.math.ColorRGBA;
 import com.jme3.texture.Texture;
-import com.simsilica.lemur.GuiGlobals;
 import com.simsilica.lemur.component.QuadBackgroundComponent;
+import jme3test.jaimesascent.assets.BudgetedAssetCache;
 
 /**
  * @author wil
  */
 public class UIImage extends QuadBackgroundComponent {
 
+    // the texture loaded through the cache, null once released
+    private String textureName;
+
     public UIImage(String texture) {
         this(texture, null);
     }
 
     public UIImage(String texture, ColorRGBA color) {
-        this(GuiGlobals.getInstance().loadTexture(texture, true, false), color);
+        this(loadTexture(texture), color);
+        this.textureName = texture;
     }
     
     public UIImage(Texture texture, ColorRGBA color) {
@@ -55,4 +60,32 @@ public class UIImage extends QuadBackgroundComponent {
             setColor(color);
         }
     }
+
+    /**
+     * Same as GuiGlobals.loadTexture(texture, true, false), but through the
+     * BudgetedAssetCache.
+     */
+    private static Texture loadTexture(String texture) {
+        Texture tex = BudgetedAssetCache.getInstance().loadTexture(textureKey(texture));
+        tex.setWrap(Texture.WrapMode.Repeat);
+        return tex;
+    }
+
+    private static TextureKey textureKey(String texture) {
+        TextureKey key = new TextureKey(texture);
+        key.setGenerateMips(false);
+        return key;
+    }
+
+    /**
+     * Gives the texture loaded by name back to the BudgetedAssetCache. Call it
+     * once the image is no longer displayed; does nothing the second time, or
+     * if the image was built from a Texture.
+     */
+    public void release() {
+        if (textureName != null) {
+            BudgetedAssetCache.getInstance().release(textureKey(textureName));
+            textureName = null;
+        }
+    }
 }